@@ -0,0 +1,84 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+   Optional cache for the results of AbbreviationRecoders, kept across
+   documents: the abbreviation pattern per recoder, and the expansion per
+   recoder, abbreviation and recoding options.
+
+   A cache can be created and held by the caller, and passed as recoding
+   option #3 of DOCPAGE to HTML, the same way as a DocBookBlockCache;
+   otherwise Encoding.getDefaultAbbreviationCache is used. If the
+   expansions of a recoder change (e.g. its glossary is updated), the
+   cache has to be invalidated.
+ */
+public class AbbreviationCache {
+
+    protected BoundedCache<Encoding.AbbreviationRecoder,Pattern> patterns;
+    // empty for abbreviations the recoder does not know
+    protected BoundedCache<Object,Optional<String>>               expansions;
+
+    public AbbreviationCache (CallContext context) {
+        this(context, 16, 4096);
+    }
+
+    public AbbreviationCache (CallContext context, int maximum_recoders, int maximum_expansions) {
+        this.patterns   = new BoundedCache<Encoding.AbbreviationRecoder,Pattern>(context, maximum_recoders);
+        this.expansions = new BoundedCache<Object,Optional<String>>(context, maximum_expansions);
+    }
+
+    public BoundedCache<Object,Optional<String>> getExpansions(CallContext context) {
+        return this.expansions;
+    }
+
+    public void invalidate(CallContext context) {
+        this.patterns.clear(context);
+        this.expansions.clear(context);
+    }
+
+    /**
+       Returns an abbreviation recoder which answers from the cache and
+       passes the other requests on to the given one.
+     */
+    public Encoding.AbbreviationRecoder getAbbreviationRecoder(CallContext context, Encoding.AbbreviationRecoder abbreviation_recoder) {
+        return new CachingAbbreviationRecoder(abbreviation_recoder);
+    }
+
+    protected class CachingAbbreviationRecoder implements Encoding.AbbreviationRecoder {
+        protected Encoding.AbbreviationRecoder abbreviation_recoder;
+
+        public CachingAbbreviationRecoder(Encoding.AbbreviationRecoder abbreviation_recoder) {
+            this.abbreviation_recoder = abbreviation_recoder;
+        }
+
+        public Pattern getAbbreviationPattern(CallContext context) {
+            return patterns.get(context, this.abbreviation_recoder, (ctx, recoder) -> recoder.getAbbreviationPattern(ctx));
+        }
+
+        public String recodeAbbreviation(CallContext context, String abbreviation, Map<String,String> recoding_options) {
+            Object key = Arrays.asList(this.abbreviation_recoder, abbreviation, recoding_options == null ? null : new HashMap<String,String>(recoding_options));
+            return expansions.get(context, key, (ctx, k) -> Optional.ofNullable(this.abbreviation_recoder.recodeAbbreviation(ctx, abbreviation, recoding_options))).orElse(null);
+        }
+    }
+}
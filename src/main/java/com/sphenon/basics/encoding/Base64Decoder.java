@@ -0,0 +1,174 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+   Streaming BASE64 decoder, the counterpart of Base64Encoder. Decoded
+   bytes are collected in a block and converted from UTF-8 whenever the
+   block is full, sequences spanning blocks are handled by the charset
+   decoder; malformed input is replaced by U+FFFD.
+
+   All variants are accepted without configuration: both alphabets,
+   with or without padding, and line breaks and blanks are skipped.
+ */
+public class Base64Decoder extends RecodingTransducer {
+
+    static protected final int[] VALUES = new int[128];
+
+    static protected final int   SKIP    = -1;
+    static protected final int   PAD     = -2;
+    static protected final int   INVALID = -3;
+
+    static {
+        java.util.Arrays.fill(VALUES, INVALID);
+        for (int i=0; i<64; i++) {
+            VALUES[Base64Encoder.BASIC_ALPHABET[i]] = i;
+            VALUES[Base64Encoder.URL_ALPHABET[i]]   = i;
+        }
+        VALUES[' ']  = SKIP;
+        VALUES['\t'] = SKIP;
+        VALUES['\r'] = SKIP;
+        VALUES['\n'] = SKIP;
+        VALUES['=']  = PAD;
+    }
+
+    protected int                   bits;
+    protected int                   count;
+    protected int                   pads;
+    protected ByteBuffer            bytes;
+    protected CharBuffer            chars;
+    protected CharsetDecoder        decoder;
+    protected ByteArrayOutputStream raw;
+
+    public Base64Decoder (CallContext context, Encoding.Output output) {
+        super(context, output);
+        this.bytes = ByteBuffer.allocate(Encoding.BLOCK_SIZE);
+        if (output != null) {
+            this.chars   = CharBuffer.allocate(Encoding.BLOCK_SIZE);
+            this.decoder = StandardCharsets.UTF_8.newDecoder()
+                               .onMalformedInput(CodingErrorAction.REPLACE)
+                               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } else {
+            this.raw     = new ByteArrayOutputStream();
+        }
+    }
+
+    public void put(CallContext context, char c) {
+        int value = c < 128 ? VALUES[c] : INVALID;
+        if (value >= 0) {
+            if (this.pads > 0) {
+                CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Invalid BASE64 input, data after padding");
+                throw (ExceptionPreConditionViolation) null; // compiler insists
+            }
+            this.bits = (this.bits << 6) | value;
+            if (++this.count == 4) {
+                this.putByte(context, this.bits >> 16);
+                this.putByte(context, this.bits >> 8);
+                this.putByte(context, this.bits);
+                this.bits  = 0;
+                this.count = 0;
+            }
+        } else if (value == PAD) {
+            // padding completes a unit of two or three chars to four
+            if (this.count < 2 || this.count + this.pads == 4) {
+                CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Invalid BASE64 input, unexpected padding");
+                throw (ExceptionPreConditionViolation) null; // compiler insists
+            }
+            this.pads++;
+        } else if (value == INVALID) {
+            CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Invalid BASE64 input char '%(char)'", "char", c);
+            throw (ExceptionPreConditionViolation) null; // compiler insists
+        }
+    }
+
+    protected void putByte(CallContext context, int b) {
+        if (this.bytes.hasRemaining() == false) {
+            this.flushBytes(context, false);
+        }
+        this.bytes.put((byte) b);
+    }
+
+    protected void flushBytes(CallContext context, boolean end_of_input) {
+        this.bytes.flip();
+        if (this.raw != null) {
+            this.raw.write(this.bytes.array(), 0, this.bytes.limit());
+            this.bytes.clear();
+            return;
+        }
+        CoderResult result;
+        do {
+            result = this.decoder.decode(this.bytes, this.chars, end_of_input);
+            this.flushChars(context);
+        } while (result.isOverflow());
+        if (end_of_input) {
+            this.decoder.flush(this.chars);
+            this.flushChars(context);
+        }
+        this.bytes.compact();
+    }
+
+    protected void flushChars(CallContext context) {
+        if (this.chars.position() > 0) {
+            this.output.append(context, this.chars.array(), 0, this.chars.position());
+            this.chars.clear();
+        }
+    }
+
+    public void finish(CallContext context) {
+        if (this.pads > 0 && this.count + this.pads != 4) {
+            CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Invalid BASE64 input, incomplete padding");
+            throw (ExceptionPreConditionViolation) null; // compiler insists
+        }
+        switch (this.count) {
+            case 0: break;
+            case 2: this.putByte(context, this.bits >> 4); break;
+            case 3: this.putByte(context, this.bits >> 10); this.putByte(context, this.bits >> 2); break;
+            default:
+                CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Invalid BASE64 input, incomplete last unit");
+                throw (ExceptionPreConditionViolation) null; // compiler insists
+        }
+        this.bits  = 0;
+        this.count = 0;
+        this.pads  = 0;
+        this.flushBytes(context, true);
+    }
+
+    static public StringBuilder decode(CallContext context, CharSequence string, StringBuilder output) {
+        Encoding.Output prepared = Encoding.prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null);
+        Base64Decoder decoder = new Base64Decoder(context, prepared);
+        decoder.append(string, 0, string.length());
+        decoder.finish(context);
+        return output == null ? prepared.to_return : output;
+    }
+
+    static public byte[] decodeToBytes(CallContext context, CharSequence string) {
+        Base64Decoder decoder = new Base64Decoder(context, (Encoding.Output) null);
+        decoder.append(string, 0, string.length());
+        decoder.finish(context);
+        return decoder.raw.toByteArray();
+    }
+}
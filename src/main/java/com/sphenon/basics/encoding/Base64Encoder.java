@@ -0,0 +1,184 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
+
+/**
+   Streaming BASE64 encoder. Chars are encoded as UTF-8, the bytes are
+   encoded in blocks as they come in, so neither the bytes nor the
+   complete result are held in memory.
+
+   Variants are selected by flags: URL uses the URL and filename safe
+   alphabet, MIME wraps lines after 76 chars with CRLF, NOPAD omits the
+   trailing '=' padding. Without flags, the output is the same as the
+   one of java.util.Base64.getEncoder().
+ */
+public class Base64Encoder extends RecodingTransducer {
+
+    static public final int URL   = 1;
+    static public final int MIME  = 2;
+    static public final int NOPAD = 4;
+
+    static protected final char[] BASIC_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    static protected final char[] URL_ALPHABET   = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    static protected final int    LINE_LENGTH    = 76;
+
+    protected char[]  alphabet;
+    protected boolean mime;
+    protected boolean padding;
+    protected int     bits;
+    protected int     count;
+    protected int     line;
+    protected char    high;
+    protected char[]  out;
+    protected int     position;
+
+    public Base64Encoder (CallContext context, Encoding.Output output, int flags) {
+        super(context, output);
+        this.alphabet = (flags & URL) != 0 ? URL_ALPHABET : BASIC_ALPHABET;
+        this.mime     = (flags & MIME) != 0;
+        this.padding  = (flags & NOPAD) == 0;
+        this.out      = new char[Encoding.BLOCK_SIZE];
+    }
+
+    /**
+       Converts recoding options like "url", "mime" or "nopad" to flags.
+     */
+    static public int getFlags(CallContext context, Object... options) {
+        int flags = 0;
+        if (options != null) {
+            for (int i=0; i<options.length; i++) {
+                String option = Encoding.getOption(context, i, "", String.class, options).trim();
+                if      (option.equalsIgnoreCase("url"))   { flags |= URL; }
+                else if (option.equalsIgnoreCase("mime"))  { flags |= MIME; }
+                else if (option.equalsIgnoreCase("nopad")) { flags |= NOPAD; }
+                else if (option.length() != 0 && option.equalsIgnoreCase("basic") == false) {
+                    CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Unknown BASE64 option '%(option)'", "option", option);
+                    throw (ExceptionPreConditionViolation) null; // compiler insists
+                }
+            }
+        }
+        return flags;
+    }
+
+    public void put(CallContext context, char c) {
+        if (this.high != 0) {
+            char high = this.high;
+            this.high = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                this.putByte(0xF0 | (cp >> 18));
+                this.putByte(0x80 | ((cp >> 12) & 0x3F));
+                this.putByte(0x80 | ((cp >> 6) & 0x3F));
+                this.putByte(0x80 | (cp & 0x3F));
+                return;
+            }
+            this.putByte('?');
+        }
+        if (c < 0x80) {
+            this.putByte(c);
+        } else if (c < 0x800) {
+            this.putByte(0xC0 | (c >> 6));
+            this.putByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.high = c;
+        } else if (Character.isLowSurrogate(c)) {
+            this.putByte('?');
+        } else {
+            this.putByte(0xE0 | (c >> 12));
+            this.putByte(0x80 | ((c >> 6) & 0x3F));
+            this.putByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+       Encodes raw bytes, without any char conversion.
+     */
+    public void put(CallContext context, byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i=offset; i<end; i++) {
+            this.putByte(buffer[i] & 0xFF);
+        }
+    }
+
+    protected void putByte(int b) {
+        this.bits = (this.bits << 8) | b;
+        if (++this.count == 3) {
+            this.putQuantum(4);
+            this.bits  = 0;
+            this.count = 0;
+        }
+    }
+
+    protected void putQuantum(int chars) {
+        if (this.position > this.out.length - 6) {
+            this.output.append(this.context, this.out, 0, this.position);
+            this.position = 0;
+        }
+        if (this.mime && this.line == LINE_LENGTH) {
+            this.out[this.position++] = '\r';
+            this.out[this.position++] = '\n';
+            this.line = 0;
+        }
+        int bits = this.bits;
+        this.out[this.position++] = this.alphabet[(bits >> 18) & 0x3F];
+        this.out[this.position++] = this.alphabet[(bits >> 12) & 0x3F];
+        if (chars > 2) { this.out[this.position++] = this.alphabet[(bits >> 6) & 0x3F]; }
+        if (chars > 3) { this.out[this.position++] = this.alphabet[bits & 0x3F]; }
+        this.line += 4;
+    }
+
+    public void finish(CallContext context) {
+        if (this.high != 0) {
+            this.high = 0;
+            this.putByte('?');
+        }
+        if (this.count > 0) {
+            int chars = this.count + 1;
+            this.bits <<= 8 * (3 - this.count);
+            this.putQuantum(chars);
+            if (this.padding) {
+                for (int i=chars; i<4; i++) { this.out[this.position++] = '='; }
+            }
+            this.bits  = 0;
+            this.count = 0;
+        }
+        if (this.position > 0) {
+            this.output.append(context, this.out, 0, this.position);
+            this.position = 0;
+        }
+        this.line = 0;
+    }
+
+    static public StringBuilder encode(CallContext context, CharSequence string, StringBuilder output, int flags) {
+        Encoding.Output prepared = Encoding.prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null);
+        Base64Encoder encoder = new Base64Encoder(context, prepared, flags);
+        encoder.append(string, 0, string.length());
+        encoder.finish(context);
+        return output == null ? prepared.to_return : output;
+    }
+
+    static public String encode(CallContext context, byte[] bytes, int offset, int length, int flags) {
+        StringBuilder output = new StringBuilder(((length + 2) / 3) * 4 + 16);
+        Base64Encoder encoder = new Base64Encoder(context, Encoding.prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null), flags);
+        encoder.put(context, bytes, offset, length);
+        encoder.finish(context);
+        return output.toString();
+    }
+}
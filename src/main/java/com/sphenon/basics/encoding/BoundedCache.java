@@ -0,0 +1,166 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   A size bounded, thread safe cache with least recently used eviction.
+
+   Entries are distributed over a number of independently locked
+   stripes, each of which evicts on its own, so the bound is
+   approximate (per stripe, maximum_size / stripes).
+ */
+public class BoundedCache<K,V> {
+
+    static public interface Factory<K,V> {
+        public V create(CallContext context, K key);
+    }
+
+    static protected class Stripe<K,V> extends LinkedHashMap<K,V> {
+        private static final long serialVersionUID = 1L;
+
+        protected int        maximum_size;
+        protected AtomicLong evictions;
+
+        public Stripe(int maximum_size, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maximum_size = maximum_size;
+            this.evictions    = evictions;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+            if (this.size() > this.maximum_size) {
+                this.evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    protected Stripe<K,V>[] stripes;
+    protected int           mask;
+    protected AtomicLong    hits;
+    protected AtomicLong    misses;
+    protected AtomicLong    evictions;
+
+    public BoundedCache (CallContext context, int maximum_size) {
+        this(context, maximum_size, 16);
+    }
+
+    public BoundedCache (CallContext context, int maximum_size, int stripe_count) {
+        int count = 1;
+        while (count < stripe_count && count < maximum_size) { count <<= 1; }
+        int per_stripe = (maximum_size + count - 1) / count;
+        if (per_stripe < 1) { per_stripe = 1; }
+
+        this.mask      = count - 1;
+        this.hits      = new AtomicLong();
+        this.misses    = new AtomicLong();
+        this.evictions = new AtomicLong();
+        @SuppressWarnings("unchecked")
+        Stripe<K,V>[] stripes = (Stripe<K,V>[]) new Stripe<?,?>[count];
+        for (int s=0; s<count; s++) {
+            stripes[s] = new Stripe<K,V>(per_stripe, this.evictions);
+        }
+        this.stripes   = stripes;
+    }
+
+    protected Stripe<K,V> getStripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.stripes[h & this.mask];
+    }
+
+    public V get(CallContext context, K key) {
+        Stripe<K,V> stripe = this.getStripe(key);
+        V value;
+        synchronized (stripe) {
+            value = stripe.get(key);
+        }
+        (value == null ? this.misses : this.hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+       Returns the cached value, or creates, caches and returns it if
+       not present. The factory is invoked outside of any lock, so in
+       case of a race it may be called more than once for a key, of
+       which the first stored value wins.
+     */
+    public V get(CallContext context, K key, Factory<K,V> factory) {
+        V value = this.get(context, key);
+        if (value != null) { return value; }
+
+        value = factory.create(context, key);
+        if (value == null) { return null; }
+
+        Stripe<K,V> stripe = this.getStripe(key);
+        synchronized (stripe) {
+            V existing = stripe.get(key);
+            if (existing != null) { return existing; }
+            stripe.put(key, value);
+        }
+        return value;
+    }
+
+    public void put(CallContext context, K key, V value) {
+        Stripe<K,V> stripe = this.getStripe(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    public void remove(CallContext context, K key) {
+        Stripe<K,V> stripe = this.getStripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    public void clear(CallContext context) {
+        for (Stripe<K,V> stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public int getSize(CallContext context) {
+        int size = 0;
+        for (Stripe<K,V> stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits(CallContext context) {
+        return this.hits.get();
+    }
+
+    public long getMisses(CallContext context) {
+        return this.misses.get();
+    }
+
+    public long getEvictions(CallContext context) {
+        return this.evictions.get();
+    }
+}
@@ -0,0 +1,56 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+/**
+   Transducer for recoders which need to see their complete input, like
+   SHA1 or FIXED; collects everything and recodes it on finish.
+ */
+public class BufferingTransducer extends RecodingTransducer {
+
+    protected Recoder               recoder;
+    protected Appendable            appendable;
+    protected RecodingTargetContext recoding_target_context;
+    protected StringBuilder         buffer;
+
+    public BufferingTransducer (CallContext context, Recoder recoder, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        super(context, (Encoding.Output) null);
+        this.recoder                 = recoder;
+        this.appendable              = appendable;
+        this.recoding_target_context = recoding_target_context;
+        this.buffer                  = new StringBuilder();
+    }
+
+    public void put(CallContext context, char c) {
+        this.buffer.append(c);
+    }
+
+    public Appendable append(CharSequence csq) {
+        this.buffer.append(csq);
+        return this;
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) {
+        this.buffer.append(csq, start, end);
+        return this;
+    }
+
+    public void finish(CallContext context) {
+        this.recoder.recode(context, new CharSourceCharSequence(context, this.buffer), this.appendable, this.recoding_target_context);
+        this.buffer = new StringBuilder();
+    }
+}
@@ -17,9 +17,41 @@ package com.sphenon.basics.encoding;
 import com.sphenon.basics.context.*;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 
 public interface CharSource {
     public int read(CallContext context);
     public int length(CallContext context);
     public void appendTo(CallContext context, Appendable appendable) throws IOException;
+
+    /**
+       Reads up to length chars into the buffer, starting at offset.
+       Returns the number of chars read, or -1 at the end of the source.
+     */
+    default public int read(CallContext context, char[] buffer, int offset, int length) {
+        if (length == 0) { return 0; }
+        int n = 0;
+        int i;
+        while (n < length && (i = this.read(context)) != -1) {
+            buffer[offset + n++] = (char) i;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+       Reads up to the remaining number of chars into the buffer.
+       Returns the number of chars read, or -1 at the end of the source.
+     */
+    default public int read(CallContext context, CharBuffer buffer) {
+        int n;
+        if (buffer.hasArray()) {
+            n = this.read(context, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (n > 0) { buffer.position(buffer.position() + n); }
+        } else {
+            char[] chars = new char[buffer.remaining()];
+            n = this.read(context, chars, 0, chars.length);
+            if (n > 0) { buffer.put(chars, 0, n); }
+        }
+        return n;
+    }
 }
\ No newline at end of file
@@ -37,6 +37,30 @@ public class CharSourceCharSequence implements  CharSource {
         return (this.pos < this.length ? this.sequence.charAt(pos++) : -1);
     }
 
+    public int read(CallContext context, char[] buffer, int offset, int length) {
+        if (length == 0) { return 0; }
+        int available = this.length - this.pos;
+        if (available <= 0) { return -1; }
+        int n = length < available ? length : available;
+        getChars(this.sequence, this.pos, this.pos + n, buffer, offset);
+        this.pos += n;
+        return n;
+    }
+
+    static public void getChars(CharSequence sequence, int begin, int end, char[] buffer, int offset) {
+        if (sequence instanceof String) {
+            ((String) sequence).getChars(begin, end, buffer, offset);
+        } else if (sequence instanceof StringBuilder) {
+            ((StringBuilder) sequence).getChars(begin, end, buffer, offset);
+        } else if (sequence instanceof StringBuffer) {
+            ((StringBuffer) sequence).getChars(begin, end, buffer, offset);
+        } else {
+            for (int i=begin; i<end; i++) {
+                buffer[offset++] = sequence.charAt(i);
+            }
+        }
+    }
+
     public int length(CallContext context) {
         return this.length;
     }
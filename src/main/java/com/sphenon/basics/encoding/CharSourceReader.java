@@ -20,31 +20,90 @@ import com.sphenon.basics.customary.*;
 
 import java.io.Reader;
 import java.io.IOException;
+import java.nio.CharBuffer;
 
+/**
+   CharSource on top of a Reader. Chars are read in blocks into an
+   internal buffer, so the reader (and its lock and decoder) is not
+   invoked once per char.
+ */
 public class CharSourceReader implements  CharSource {
     protected Reader reader;
+    protected char[] buffer;
+    protected int    pos;
+    protected int    limit;
+
+    static public final int DEFAULT_BUFFER_SIZE = 8192;
 
     public CharSourceReader(CallContext context, Reader reader) {
+        this(context, reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CharSourceReader(CallContext context, Reader reader, int buffer_size) {
         this.reader = reader;
+        this.buffer = new char[buffer_size > 0 ? buffer_size : DEFAULT_BUFFER_SIZE];
+        this.pos    = 0;
+        this.limit  = 0;
     }
 
-    public int read(CallContext context) {
+    protected boolean fill(CallContext context) {
+        int n;
+        do {
+            n = this.readFromReader(context, this.buffer, 0, this.buffer.length);
+        } while (n == 0);
+        this.pos   = 0;
+        this.limit = n < 0 ? 0 : n;
+        return n > 0;
+    }
+
+    protected int readFromReader(CallContext context, char[] buffer, int offset, int length) {
         try {
-            return reader.read();
+            return reader.read(buffer, offset, length);
         } catch (IOException ioe) {
             CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not recode char sequence, reading from reader failed");
             throw (ExceptionEnvironmentFailure) null; // compiler insists
         }
     }
 
+    public int read(CallContext context) {
+        if (this.pos >= this.limit && this.fill(context) == false) {
+            return -1;
+        }
+        return this.buffer[this.pos++];
+    }
+
+    public int read(CallContext context, char[] buffer, int offset, int length) {
+        if (length == 0) { return 0; }
+        int available = this.limit - this.pos;
+        if (available <= 0) {
+            // large requests bypass the internal buffer
+            if (length >= this.buffer.length) {
+                return this.readFromReader(context, buffer, offset, length);
+            }
+            if (this.fill(context) == false) { return -1; }
+            available = this.limit;
+        }
+        int n = length < available ? length : available;
+        System.arraycopy(this.buffer, this.pos, buffer, offset, n);
+        this.pos += n;
+        return n;
+    }
+
     public int length(CallContext context) {
         return -1;
     }
 
     public void appendTo(CallContext context, Appendable appendable) throws IOException {
-        int i;
-        while ((i = read(context)) != -1) {
-            appendable.append((char) i);
+        if (this.pos >= this.limit && this.fill(context) == false) {
+            return;
         }
+        do {
+            if (appendable instanceof StringBuilder) {
+                ((StringBuilder) appendable).append(this.buffer, this.pos, this.limit - this.pos);
+            } else {
+                appendable.append(CharBuffer.wrap(this.buffer, this.pos, this.limit - this.pos));
+            }
+            this.pos = this.limit;
+        } while (this.fill(context));
     }
 }
@@ -0,0 +1,404 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.util.Locale;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+
+/**
+   A printf format string with at most one conversion, parsed once and
+   applied without java.util.Formatter.
+
+   Supported are %d, %x and %X for integers, %f for floating point
+   numbers and %s for strings, with width, precision (%f, %s) and the
+   flags '-', '0', '+' and ' ' where Formatter allows them, plus literal
+   text, "%%" and "%n". The result is the same as the one of
+   String.format(format, value) in the default format locale; formats
+   or values outside of this subset (including %f values where the
+   rounding of the shortest decimal representation could differ from
+   the one of the exact value) are passed to String.format.
+ */
+public class CompiledFormat {
+
+    static protected volatile BoundedCache<String,CompiledFormat> cache;
+
+    static public BoundedCache<String,CompiledFormat> getCache(CallContext context) {
+        if (cache == null) {
+            synchronized (CompiledFormat.class) {
+                if (cache == null) {
+                    cache = new BoundedCache<String,CompiledFormat>(context, 1024);
+                }
+            }
+        }
+        return cache;
+    }
+
+    static public CompiledFormat get(CallContext context, String format) {
+        return getCache(context).get(context, format, (ctx, key) -> new CompiledFormat(ctx, key));
+    }
+
+    static protected class Symbols {
+        protected final Locale locale;
+        protected final char   zero;
+        protected final char   decimal_separator;
+
+        public Symbols(Locale locale) {
+            this.locale = locale;
+            if (locale == null || locale.equals(Locale.US)) {
+                this.zero              = '0';
+                this.decimal_separator = '.';
+            } else {
+                DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(locale);
+                this.zero              = dfs.getZeroDigit();
+                this.decimal_separator = dfs.getDecimalSeparator();
+            }
+        }
+    }
+
+    // the parts of a format, filled while parsing
+    static protected class Specification {
+        protected String  prefix     = "";
+        protected String  suffix     = "";
+        protected char    conversion;
+        protected boolean left;
+        protected boolean zero_pad;
+        protected boolean plus;
+        protected boolean space;
+        protected int     width      = -1;
+        protected int     precision  = -1;
+    }
+
+    protected final String  format;
+    protected final boolean compiled;
+    protected final String  prefix;
+    protected final String  suffix;
+    protected final char    conversion;
+    protected final boolean left;
+    protected final boolean zero_pad;
+    protected final boolean plus;
+    protected final boolean space;
+    protected final int     width;
+    protected final int     precision;
+
+    // depends on the default locale, which may change
+    protected volatile Symbols symbols;
+
+    public CompiledFormat (CallContext context, String format) {
+        Specification specification = new Specification();
+        this.format     = format;
+        this.compiled   = parse(format, specification);
+        this.prefix     = specification.prefix;
+        this.suffix     = specification.suffix;
+        this.conversion = specification.conversion;
+        this.left       = specification.left;
+        this.zero_pad   = specification.zero_pad;
+        this.plus       = specification.plus;
+        this.space      = specification.space;
+        this.width      = specification.width;
+        this.precision  = specification.precision;
+    }
+
+    public String getFormat(CallContext context) {
+        return this.format;
+    }
+
+    /**
+       Parses the format into the specification, returns false if it is
+       not supported here.
+     */
+    static protected boolean parse(String format, Specification specification) {
+        StringBuilder text = new StringBuilder();
+        int len = format.length();
+        int i   = 0;
+        while (i < len) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                text.append(c);
+                continue;
+            }
+            boolean left = false, zero_pad = false, plus = false, space = false;
+            int width = -1, precision = -1;
+            for (; i < len; i++) {
+                c = format.charAt(i);
+                if      (c == '-' && left     == false) { left     = true; }
+                else if (c == '0' && zero_pad == false) { zero_pad = true; }
+                else if (c == '+' && plus     == false) { plus     = true; }
+                else if (c == ' ' && space    == false) { space    = true; }
+                else if ("-0+ #,(<".indexOf(c) != -1)   { return false; }
+                else                                    { break; }
+            }
+            int start = i;
+            while (i < len && (c = format.charAt(i)) >= '0' && c <= '9') { i++; }
+            if (i > start) {
+                if (i - start > 6) { return false; }
+                width = Integer.parseInt(format.substring(start, i));
+            }
+            if (i < len && format.charAt(i) == '.') {
+                start = ++i;
+                while (i < len && (c = format.charAt(i)) >= '0' && c <= '9') { i++; }
+                if (i == start || i - start > 6) { return false; }
+                precision = Integer.parseInt(format.substring(start, i));
+            }
+            if (i == len) { return false; }
+            char conversion = format.charAt(i++);
+
+            if (conversion == '%' || conversion == 'n') {
+                if (left || zero_pad || plus || space || width != -1 || precision != -1) { return false; }
+                text.append(conversion == '%' ? "%" : System.lineSeparator());
+                continue;
+            }
+            if (specification.conversion != 0) { return false; }
+
+            if ((left || zero_pad) && width == -1) { return false; }
+            if (left && zero_pad) { return false; }
+            if (plus && space) { return false; }
+            switch (conversion) {
+                case 'd':
+                    if (precision != -1) { return false; }
+                    break;
+                case 'x': case 'X':
+                    if (precision != -1 || plus || space) { return false; }
+                    break;
+                case 'f':
+                    break;
+                case 's':
+                    if (zero_pad || plus || space) { return false; }
+                    break;
+                default:
+                    return false;
+            }
+            specification.conversion = conversion;
+            specification.left       = left;
+            specification.zero_pad   = zero_pad;
+            specification.plus       = plus;
+            specification.space      = space;
+            specification.width      = width;
+            specification.precision  = precision;
+            specification.prefix     = text.toString();
+            text.setLength(0);
+        }
+        if (specification.conversion == 0) {
+            specification.prefix = text.toString();
+            specification.suffix = "";
+        } else {
+            specification.suffix = text.toString();
+        }
+        return true;
+    }
+
+    protected Symbols getSymbols() {
+        Locale  locale  = Locale.getDefault(Locale.Category.FORMAT);
+        Symbols symbols = this.symbols;
+        if (symbols == null || symbols.locale != locale) {
+            this.symbols = symbols = new Symbols(locale);
+        }
+        return symbols;
+    }
+
+    protected boolean isConstant() {
+        return this.compiled && this.conversion == 0;
+    }
+
+    protected boolean isIntegral() {
+        return this.compiled && (this.conversion == 'd' || this.conversion == 'x' || this.conversion == 'X');
+    }
+
+    // ----------
+
+    public String format(CallContext context, int value) {
+        return this.isConstant() ? this.prefix : this.format(context, value, new StringBuilder()).toString();
+    }
+
+    public StringBuilder format(CallContext context, int value, StringBuilder output) {
+        if (this.isConstant()) { return output.append(this.prefix); }
+        if (this.isIntegral() == false) { return this.fallback(output, (Integer) value); }
+        return this.formatIntegral(output, value, value < 0 ? value + (1L << 32) : value);
+    }
+
+    public String format(CallContext context, long value) {
+        return this.isConstant() ? this.prefix : this.format(context, value, new StringBuilder()).toString();
+    }
+
+    public StringBuilder format(CallContext context, long value, StringBuilder output) {
+        if (this.isConstant()) { return output.append(this.prefix); }
+        if (this.isIntegral() == false) { return this.fallback(output, (Long) value); }
+        return this.formatIntegral(output, value, value);
+    }
+
+    public String format(CallContext context, float value) {
+        return this.isConstant() ? this.prefix : this.format(context, value, new StringBuilder()).toString();
+    }
+
+    public StringBuilder format(CallContext context, float value, StringBuilder output) {
+        if (this.isConstant()) { return output.append(this.prefix); }
+        String digits = this.getFixedDigits(value);
+        if (digits == null) { return this.fallback(output, (Float) value); }
+        return this.formatFixed(output, Double.compare(value, 0.0) < 0, digits);
+    }
+
+    public String format(CallContext context, double value) {
+        return this.isConstant() ? this.prefix : this.format(context, value, new StringBuilder()).toString();
+    }
+
+    public StringBuilder format(CallContext context, double value, StringBuilder output) {
+        if (this.isConstant()) { return output.append(this.prefix); }
+        String digits = this.getFixedDigits(value);
+        if (digits == null) { return this.fallback(output, (Double) value); }
+        return this.formatFixed(output, Double.compare(value, 0.0) < 0, digits);
+    }
+
+    public String format(CallContext context, String value) {
+        return this.isConstant() ? this.prefix : this.format(context, value, new StringBuilder()).toString();
+    }
+
+    public StringBuilder format(CallContext context, String value, StringBuilder output) {
+        if (this.isConstant()) { return output.append(this.prefix); }
+        if (this.compiled == false || this.conversion != 's' || value == null) { return this.fallback(output, value); }
+        int len = value.length();
+        if (this.precision != -1 && this.precision < len) { len = this.precision; }
+        output.append(this.prefix);
+        int pad = this.width - len;
+        if (this.left == false) { this.appendRepeated(output, ' ', pad); }
+        output.append(value, 0, len);
+        if (this.left) { this.appendRepeated(output, ' ', pad); }
+        return output.append(this.suffix);
+    }
+
+    // ----------
+
+    protected StringBuilder fallback(StringBuilder output, Object value) {
+        return output.append(String.format(this.format, value));
+    }
+
+    protected void appendRepeated(StringBuilder output, char c, int count) {
+        for (int i=0; i<count; i++) { output.append(c); }
+    }
+
+    /**
+       Formats %d of signed_value, or %x / %X of unsigned_value, which
+       for negative ints is the value as an unsigned 32 bit number, like
+       Formatter does.
+     */
+    protected StringBuilder formatIntegral(StringBuilder output, long signed_value, long unsigned_value) {
+        if (this.conversion == 'd') {
+            boolean negative = signed_value < 0;
+            String  digits   = Long.toString(signed_value);
+            int     offset   = negative ? 1 : 0;
+            char    sign     = negative ? '-' : this.plus ? '+' : this.space ? ' ' : 0;
+            return this.appendNumber(output, sign, digits, offset, this.getSymbols());
+        }
+        String digits = Long.toHexString(unsigned_value);
+        if (this.conversion == 'X') { digits = digits.toUpperCase(Locale.ROOT); }
+        output.append(this.prefix);
+        int len = digits.length();
+        int body = this.zero_pad && this.width > len ? this.width : len;
+        int pad  = this.width - body;
+        if (this.left == false) { this.appendRepeated(output, ' ', pad); }
+        this.appendRepeated(output, '0', body - len);
+        output.append(digits);
+        if (this.left) { this.appendRepeated(output, ' ', pad); }
+        return output.append(this.suffix);
+    }
+
+    protected StringBuilder formatFixed(StringBuilder output, boolean negative, String digits) {
+        char sign = negative ? '-' : this.plus ? '+' : this.space ? ' ' : 0;
+        return this.appendNumber(output, sign, digits, 0, this.getSymbols());
+    }
+
+    /**
+       Appends sign and digits (from offset, containing '.' if any),
+       localized, zero padded and justified to the width.
+     */
+    protected StringBuilder appendNumber(StringBuilder output, char sign, String digits, int offset, Symbols symbols) {
+        output.append(this.prefix);
+        int len  = digits.length() - offset + (sign != 0 ? 1 : 0);
+        int body = this.zero_pad && this.width > len ? this.width : len;
+        int pad  = this.width - body;
+        if (this.left == false) { this.appendRepeated(output, ' ', pad); }
+        if (sign != 0) { output.append(sign); }
+        this.appendRepeated(output, symbols.zero, body - len);
+        int shift = symbols.zero - '0';
+        int end   = digits.length();
+        if (shift == 0 && symbols.decimal_separator == '.') {
+            output.append(digits, offset, end);
+        } else {
+            for (int i=offset; i<end; i++) {
+                char c = digits.charAt(i);
+                output.append(c == '.' ? symbols.decimal_separator : (char) (c + shift));
+            }
+        }
+        if (this.left) { this.appendRepeated(output, ' ', pad); }
+        return output.append(this.suffix);
+    }
+
+    static protected final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+       Returns the digits of the absolute value for %f, or null if they
+       can't be determined here.
+
+       Formatter rounds the shortest decimal representation of the value
+       (half up), which is within half an ulp of the exact value; here,
+       the value scaled by 10^precision is rounded instead, which gives
+       the same result as long as no rounding boundary is close to it.
+       Small scaled values are handled with double arithmetic (with some
+       ulps of tolerance for the multiplication), others with BigDecimal.
+     */
+    protected String getFixedDigits(double value) {
+        if (this.compiled == false || this.conversion != 'f') { return null; }
+        if (Double.isNaN(value) || Double.isInfinite(value)) { return null; }
+        double v         = Math.abs(value);
+        int    precision = this.precision == -1 ? 6 : this.precision;
+
+        if (precision < POWERS_OF_TEN.length) {
+            double scaled = v * POWERS_OF_TEN[precision];
+            if (scaled < 4503599627370496.0) { // 2^52
+                double floor    = Math.floor(scaled);
+                double fraction = scaled - floor;
+                if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) { return null; }
+                return toFixed((long) floor + (fraction > 0.5 ? 1 : 0), precision);
+            }
+        }
+
+        BigDecimal exact    = new BigDecimal(v);
+        BigDecimal boundary = exact.setScale(precision, RoundingMode.FLOOR).add(BigDecimal.valueOf(5, precision + 1));
+        if (exact.subtract(boundary).abs().compareTo(new BigDecimal(Math.ulp(v))) <= 0) { return null; }
+        return exact.setScale(precision, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+       Returns unscaled / 10^precision as plain decimal number.
+     */
+    static protected String toFixed(long unscaled, int precision) {
+        String digits = Long.toString(unscaled);
+        if (precision == 0) { return digits; }
+        int    len    = digits.length();
+        int    whole  = len > precision ? len - precision : 1;
+        char[] result = new char[whole + 1 + precision];
+        int    zeros  = whole + precision - len;
+        int    i      = 0;
+        for (; i < zeros; i++) { result[i] = '0'; }
+        digits.getChars(0, len, result, i);
+        System.arraycopy(result, whole, result, whole + 1, precision);
+        result[whole] = '.';
+        return new String(result);
+    }
+}
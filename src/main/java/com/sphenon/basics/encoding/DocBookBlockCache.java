@@ -0,0 +1,255 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+   Incremental recoding of DocBook documents which are recoded again and
+   again with small changes, like in an editor preview.
+
+   The document is split into blocks at "<para" and "<section" tags. The
+   cache keeps the blocks and their recoded fragments of the last
+   document per recoding; on the next call the unchanged prefix and
+   suffix of the document are found by comparing it to the last one, the
+   blocks within them are reused with their offsets shifted, and only the
+   blocks in between are tokenized again. An editor therefore holds one
+   cache per document it previews. If a block can't be recoded
+   independently of the rest of the document (see DocBookTokenizer.tokenize),
+   the document is recoded as a whole.
+
+   Links are resolved after the blocks are put together, since link
+   markup may span blocks; the results of the link recoder are cached
+   separately and can be invalidated on their own, e.g. when link
+   targets change. DOCPAGE to HTML is rendered by an external service as
+   a whole, so for DOCPAGE only the link results are cached.
+ */
+public class DocBookBlockCache {
+
+    static protected final String[] BLOCK_TAGS = { "<para", "<section" };
+    static protected final int      MAXIMUM_TAG_LENGTH = 8;
+
+    static protected class Document {
+        protected String   input;
+        // the start of each block, followed by the length of the input
+        protected int[]    starts;
+        protected String[] fragments;
+
+        public Document(String input, int[] starts, String[] fragments) {
+            this.input     = input;
+            this.starts    = starts;
+            this.fragments = fragments;
+        }
+    }
+
+    protected BoundedCache<String,Document> documents;
+    // empty for links the recoder can't resolve
+    protected BoundedCache<Object,Optional<String>> links;
+    protected long tokenized_blocks;
+    protected long reused_blocks;
+
+    public DocBookBlockCache (CallContext context) {
+        this(context, 16, 4096);
+    }
+
+    public DocBookBlockCache (CallContext context, int maximum_recodings, int maximum_links) {
+        this.documents = new BoundedCache<String,Document>(context, maximum_recodings);
+        this.links     = new BoundedCache<Object,Optional<String>>(context, maximum_links);
+    }
+
+    public BoundedCache<Object,Optional<String>> getLinks(CallContext context) {
+        return this.links;
+    }
+
+    public long getTokenizedBlocks(CallContext context) {
+        return this.tokenized_blocks;
+    }
+
+    public long getReusedBlocks(CallContext context) {
+        return this.reused_blocks;
+    }
+
+    public void invalidateFragments(CallContext context) {
+        this.documents.clear(context);
+    }
+
+    public void invalidateLinks(CallContext context) {
+        this.links.clear(context);
+    }
+
+    /**
+       Appends the tokenized input block by block, reusing the blocks of
+       the last document of the same recoding within the unchanged prefix
+       and suffix; the recoding identifies the rules. Returns false and
+       leaves the output unchanged if the document has to be recoded as a
+       whole.
+     */
+    public boolean appendBlocks(CallContext context, CharSequence input, StringBuilder output, String recoding, DocBookTokenizer.Rule[] rules) {
+        String   text     = input.toString();
+        int      len      = text.length();
+        int      mark     = output.length();
+        Document previous = this.documents.get(context, recoding);
+
+        List<Integer> starts    = new ArrayList<Integer>();
+        List<String>  fragments = new ArrayList<String>();
+        int start        = 0;
+        int delta        = 0;
+        int suffix_start = Integer.MAX_VALUE;
+
+        if (previous != null) {
+            String old     = previous.input;
+            int    old_len = old.length();
+            int    blocks  = previous.fragments.length;
+            int    limit   = Math.min(old_len, len);
+            int    prefix  = 0;
+            while (prefix < limit && old.charAt(prefix) == text.charAt(prefix)) { prefix++; }
+            if (prefix == old_len && prefix == len) {
+                for (String fragment : previous.fragments) { output.append(fragment); }
+                this.reused_blocks += blocks;
+                return true;
+            }
+            int suffix = 0;
+            while (suffix < limit - prefix && old.charAt(old_len - 1 - suffix) == text.charAt(len - 1 - suffix)) { suffix++; }
+
+            // a block is unchanged if the tag which ends it is, too
+            int b = 0;
+            while (b < blocks && previous.starts[b + 1] + MAXIMUM_TAG_LENGTH <= prefix) {
+                starts.add(previous.starts[b]);
+                fragments.add(previous.fragments[b]);
+                output.append(previous.fragments[b]);
+                b++;
+            }
+            this.reused_blocks += b;
+            start        = previous.starts[b];
+            delta        = len - old_len;
+            suffix_start = old_len - suffix;
+        }
+
+        while (start < len) {
+            if (start - delta >= suffix_start) {
+                int b = Arrays.binarySearch(previous.starts, 0, previous.fragments.length, start - delta);
+                if (b >= 0) {
+                    this.reused_blocks += previous.fragments.length - b;
+                    for (; b < previous.fragments.length; b++) {
+                        starts.add(previous.starts[b] + delta);
+                        fragments.add(previous.fragments[b]);
+                        output.append(previous.fragments[b]);
+                    }
+                    break;
+                }
+            }
+            int end = getBlockEnd(text, start);
+            StringBuilder recoded = new StringBuilder(end - start + 16);
+            if (DocBookTokenizer.tokenize(text.substring(start, end), rules, new DocBookTokenizer.TextSink(recoded), end < len) == false) {
+                output.setLength(mark);
+                this.documents.remove(context, recoding);
+                return false;
+            }
+            this.tokenized_blocks++;
+            String fragment = recoded.toString();
+            starts.add(start);
+            fragments.add(fragment);
+            output.append(fragment);
+            start = end;
+        }
+
+        int[] block_starts = new int[starts.size() + 1];
+        for (int i=0; i<starts.size(); i++) { block_starts[i] = starts.get(i); }
+        block_starts[starts.size()] = len;
+        this.documents.put(context, recoding, new Document(text, block_starts, fragments.toArray(new String[fragments.size()])));
+        return true;
+    }
+
+    static protected int getBlockEnd(CharSequence input, int start) {
+        int len = input.length();
+        for (int i=start + 1; i<len; i++) {
+            if (input.charAt(i) == '<') {
+                for (String tag : BLOCK_TAGS) {
+                    if (DocBookTokenizer.regionMatches(input, i, tag)) { return i; }
+                }
+            }
+        }
+        return len;
+    }
+
+    /**
+       Returns a link recoder which answers from the cache and passes the
+       other links on to the given one; if that one resolves links in
+       batches, the returned one does so, too.
+     */
+    public Encoding.LinkRecoder getLinkRecoder(CallContext context, Encoding.LinkRecoder link_recoder) {
+        return link_recoder instanceof Encoding.BatchLinkRecoder ? new CachingBatchLinkRecoder((Encoding.BatchLinkRecoder) link_recoder) : new CachingLinkRecoder(link_recoder);
+    }
+
+    protected class CachingLinkRecoder implements Encoding.LinkRecoder {
+        protected Encoding.LinkRecoder link_recoder;
+
+        public CachingLinkRecoder(Encoding.LinkRecoder link_recoder) {
+            this.link_recoder = link_recoder;
+        }
+
+        protected Object getKey(String link, HashMap<String,String> attributes) {
+            return Arrays.asList(this.link_recoder, link, attributes);
+        }
+
+        public String recode(CallContext context, String link, HashMap<String,String> attributes) {
+            return links.get(context, this.getKey(link, attributes), (ctx, key) -> Optional.ofNullable(this.link_recoder.recode(ctx, link, attributes))).orElse(null);
+        }
+    }
+
+    protected class CachingBatchLinkRecoder extends CachingLinkRecoder implements Encoding.BatchLinkRecoder {
+
+        public CachingBatchLinkRecoder(Encoding.BatchLinkRecoder link_recoder) {
+            super(link_recoder);
+        }
+
+        public List<String> recodeLinks(CallContext context, List<String> requested_links, List<HashMap<String,String>> attributes) {
+            List<String>                  results            = new ArrayList<String>(requested_links.size());
+            List<Integer>                 missing            = new ArrayList<Integer>();
+            List<String>                  missing_links      = new ArrayList<String>();
+            List<HashMap<String,String>>  missing_attributes = new ArrayList<HashMap<String,String>>();
+            for (int i=0; i<requested_links.size(); i++) {
+                Optional<String> recoded = links.get(context, this.getKey(requested_links.get(i), attributes.get(i)));
+                if (recoded == null) {
+                    missing.add(i);
+                    missing_links.add(requested_links.get(i));
+                    missing_attributes.add(attributes.get(i));
+                }
+                results.add(recoded == null ? null : recoded.orElse(null));
+            }
+            if (missing.isEmpty()) { return results; }
+
+            List<String> resolved = ((Encoding.BatchLinkRecoder) this.link_recoder).recodeLinks(context, missing_links, missing_attributes);
+            if (resolved == null || resolved.size() != missing.size()) {
+                CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Batch link recoder returned %(got) results for %(requested) links", "got", resolved == null ? 0 : resolved.size(), "requested", missing.size());
+                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+            }
+            for (int m=0; m<missing.size(); m++) {
+                String recoded = resolved.get(m);
+                links.put(context, this.getKey(missing_links.get(m), missing_attributes.get(m)), Optional.ofNullable(recoded));
+                results.set(missing.get(m), recoded);
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,613 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import java.util.regex.Pattern;
+
+/**
+   Single pass tokenizer for the DocBook recodings (DOCBOOK to HTML,
+   HTMLPRE, WIKI and JAVA).
+
+   The input is scanned for tags, each tag is looked up in the rule
+   table of the target and replaced by the rule, other text and tags
+   are passed on unchanged; the result is written to a Sink, which
+   takes care of the character level rules of the target (escaping,
+   whitespace).
+
+   The recodings were formerly chains of regular expressions, which
+   give the same result as a single pass as long as tags do not
+   overlap. Input where a '<' is followed by another '<' before the
+   next '>', or where an attribute value contains a '>', is rejected by
+   tokenize, so that the caller can fall back to the chain.
+ */
+public class DocBookTokenizer {
+
+    static public interface Sink {
+        public void append(CharSequence text, int start, int end);
+        public void token(int token);
+        public void finish();
+    }
+
+    static public final int ENTRY_END = 1;
+    static public final int ROW_END   = 2;
+    static public final int ROW_START = 3;
+
+    static protected final int NO_MATCH  = -1;
+    static protected final int AMBIGUOUS = -2;
+
+    static public class Rule {
+        static protected final int EXACT     = 0;
+        static protected final int PREFIX    = 1;
+        static protected final int ATTRIBUTE = 2;
+
+        protected int    kind;
+        protected String tag;
+        protected String attribute;
+        protected String replacement;
+        protected String suffix;
+        protected int    token;
+
+        protected Rule(int kind, String tag, String attribute, String replacement, String suffix, int token) {
+            this.kind        = kind;
+            this.tag         = tag;
+            this.attribute   = attribute == null ? null : attribute + "=\"";
+            this.replacement = replacement;
+            this.suffix      = suffix;
+            this.token       = token;
+        }
+
+        /**
+           Tag "<name>" or "</name>", as is.
+         */
+        static public Rule exact(String tag, String replacement) {
+            return new Rule(EXACT, tag, null, replacement, null, 0);
+        }
+
+        /**
+           Tags starting with "<name" or "</name", like "<name[^>]*>".
+         */
+        static public Rule prefix(String tag, String replacement) {
+            return new Rule(PREFIX, tag, null, replacement, null, 0);
+        }
+
+        /**
+           Tags like "<name\s+attribute="value"\s*>", replaced by prefix,
+           value and suffix.
+         */
+        static public Rule attribute(String tag, String attribute, String prefix, String suffix) {
+            return new Rule(ATTRIBUTE, tag, attribute, prefix, suffix, 0);
+        }
+
+        /**
+           Tag "<name>" or "</name>", passed to the sink as token.
+         */
+        static public Rule token(String tag, int token) {
+            return new Rule(EXACT, tag, null, null, null, token);
+        }
+
+        /**
+           Returns the end of the match of the tag starting at start,
+           whose first '>' is at close, or NO_MATCH or AMBIGUOUS; if the
+           input is partial, a match depending on what follows it is
+           AMBIGUOUS, too.
+         */
+        protected int match(CharSequence input, int start, int close, boolean partial) {
+            int len = this.tag.length();
+            switch (this.kind) {
+                case EXACT:
+                    return (close + 1 - start == len && regionMatches(input, start, this.tag)) ? close + 1 : NO_MATCH;
+                case PREFIX:
+                    return (len <= close - start && regionMatches(input, start, this.tag)) ? close + 1 : NO_MATCH;
+                default:
+                    int value = this.getValueStart(input, start, close);
+                    if (value < 0) { return NO_MATCH; }
+                    int quote = indexOf(input, '"', value);
+                    if (quote == -1) { return partial ? AMBIGUOUS : NO_MATCH; }
+                    int end = skipWhitespace(input, quote + 1);
+                    if (end == input.length()) { return partial ? AMBIGUOUS : NO_MATCH; }
+                    if (input.charAt(end) != '>') { return NO_MATCH; }
+                    return end == close ? close + 1 : AMBIGUOUS;
+            }
+        }
+
+        protected int getValueStart(CharSequence input, int start, int close) {
+            if (regionMatches(input, start, this.tag) == false) { return -1; }
+            int i = start + this.tag.length();
+            int j = skipWhitespace(input, i);
+            if (j == i || regionMatches(input, j, this.attribute) == false) { return -1; }
+            return j + this.attribute.length();
+        }
+
+        protected void emit(CharSequence input, int start, int end, Sink sink) {
+            if (this.kind == ATTRIBUTE) {
+                int value = this.getValueStart(input, start, end - 1);
+                sink.append(this.replacement, 0, this.replacement.length());
+                sink.append(input, value, indexOf(input, '"', value));
+                sink.append(this.suffix, 0, this.suffix.length());
+            } else if (this.replacement == null) {
+                sink.token(this.token);
+            } else if (this.replacement.isEmpty() == false) {
+                sink.append(this.replacement, 0, this.replacement.length());
+            }
+        }
+    }
+
+    static protected boolean regionMatches(CharSequence input, int offset, String string) {
+        int len = string.length();
+        if (offset + len > input.length()) { return false; }
+        for (int i=0; i<len; i++) {
+            if (input.charAt(offset + i) != string.charAt(i)) { return false; }
+        }
+        return true;
+    }
+
+    static protected int indexOf(CharSequence input, char c, int from) {
+        int len = input.length();
+        for (int i=from; i<len; i++) {
+            if (input.charAt(i) == c) { return i; }
+        }
+        return -1;
+    }
+
+    // \s of java.util.regex
+    static protected int skipWhitespace(CharSequence input, int i) {
+        int len = input.length();
+        while (i < len) {
+            char c = input.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') { break; }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+       Tokenizes the input, passes text and replaced tags to the sink
+       and finishes it. Returns false if the input is ambiguous, see
+       above; the sink may have received parts of the input then.
+     */
+    static public boolean tokenize(CharSequence input, Rule[] rules, Sink sink) {
+        return tokenize(input, rules, sink, false);
+    }
+
+    /**
+       If partial, the input is a part of a document starting at a tag,
+       like a block; in this case false is also returned if the result
+       might depend on what follows the input, so that tokenizing the
+       parts one by one gives the same result as tokenizing the whole.
+     */
+    static public boolean tokenize(CharSequence input, Rule[] rules, Sink sink, boolean partial) {
+        int len  = input.length();
+        int text = 0;
+        int open = indexOf(input, '<', 0);
+        while (open != -1) {
+            int close = -1;
+            int next  = -1;
+            for (int i=open + 1; i<len; i++) {
+                char c = input.charAt(i);
+                if (c == '>') { close = i; break; }
+                if (c == '<') { next = i; break; }
+            }
+            if (next != -1) {
+                if (partial || indexOf(input, '>', next) != -1) { return false; }
+                break;
+            }
+            if (close == -1) {
+                if (partial) { return false; }
+                break;
+            }
+
+            for (Rule rule : rules) {
+                int end = rule.match(input, open, close, partial);
+                if (end == AMBIGUOUS) { return false; }
+                if (end != NO_MATCH) {
+                    if (open > text) { sink.append(input, text, open); }
+                    rule.emit(input, open, end, sink);
+                    text = end;
+                    break;
+                }
+            }
+            open = indexOf(input, '<', close + 1);
+        }
+        if (text < len) { sink.append(input, text, len); }
+        sink.finish();
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------------
+    // rule tables
+
+    static protected final Rule[][] html_rules = new Rule[10][];
+
+    static {
+        for (int depth=0; depth<html_rules.length; depth++) {
+            html_rules[depth] = createHTMLRules(depth);
+        }
+    }
+
+    static public Rule[] getHTMLRules(Integer heading_depth) {
+        if (heading_depth != null && heading_depth >= 0 && heading_depth < html_rules.length) {
+            return html_rules[heading_depth];
+        }
+        return createHTMLRules(heading_depth);
+    }
+
+    static protected Rule[] createHTMLRules(Integer heading_depth) {
+        return new Rule[] {
+            Rule.prefix   ("<para"            , "<p>"),
+            Rule.exact    ("</para>"          , "</p>"),
+            Rule.prefix   ("<section"         , "<div class=\"section\">"),
+            Rule.exact    ("</section>"       , "</div>"),
+            Rule.prefix   ("<title"           , "<h" + heading_depth + ">"),
+            Rule.prefix   ("</title"          , "</h" + heading_depth + ">"),
+            Rule.prefix   ("<simplelist"      , "<ul>"),
+            Rule.prefix   ("</simplelist"     , "</ul>"),
+            Rule.prefix   ("<member"          , "<li>"),
+            Rule.prefix   ("</member"         , "</li>"),
+            Rule.attribute("<ulink"           , "url", "<a href=\"", "\">"),
+            Rule.exact    ("</ulink>"         , "</a>"),
+            Rule.attribute("<programlisting"  , "language", "<pre class=\"", "\">"),
+            Rule.prefix   ("<programlisting"  , "<pre>"),
+            Rule.prefix   ("</programlisting" , "</pre>")
+        };
+    }
+
+    static public final Rule[] HTMLPRE_RULES = {
+        Rule.prefix   ("<para"            , ""),
+        Rule.exact    ("</para>"          , "")
+    };
+
+    static public final Rule[] WIKI_RULES = {
+        Rule.prefix   ("<para"            , ""),
+        Rule.exact    ("</para>"          , ""),
+        Rule.prefix   ("<synopsis"        , "§(code§)"),
+        Rule.prefix   ("<code"            , "§(code§)"),
+        Rule.exact    ("</synopsis>"      , "§(/code§)"),
+        Rule.exact    ("</code>"          , "§(/code§)"),
+        Rule.prefix   ("<emphasis"        , "'''"),
+        Rule.exact    ("</emphasis>"      , "'''")
+    };
+
+    static public final Rule[] JAVA_RULES = {
+        Rule.prefix   ("<para"            , ""),
+        Rule.exact    ("</para>"          , "\n\n"),
+        Rule.prefix   ("<synopsis"        , "'"),
+        Rule.prefix   ("<code"            , "'"),
+        Rule.exact    ("</synopsis>"      , "'"),
+        Rule.exact    ("</code>"          , "'"),
+        Rule.prefix   ("<literal"         , ""),
+        Rule.prefix   ("</literal"        , ""),
+        Rule.prefix   ("<informaltable"   , ""),
+        Rule.prefix   ("</informaltable"  , ""),
+        Rule.prefix   ("<tgroup"          , ""),
+        Rule.prefix   ("</tgroup"         , ""),
+        Rule.prefix   ("<tbody"           , ""),
+        Rule.prefix   ("</tbody"          , ""),
+        Rule.prefix   ("<simplelist"      , ""),
+        Rule.prefix   ("</simplelist"     , ""),
+        Rule.prefix   ("<member"          , ""),
+        Rule.prefix   ("</member"         , ""),
+        Rule.exact    ("<entry>"          , ""),
+        Rule.token    ("</entry>"         , ENTRY_END),
+        Rule.token    ("</row>"           , ROW_END),
+        Rule.token    ("<row>"            , ROW_START),
+        Rule.prefix   ("<emphasis"        , "*"),
+        Rule.exact    ("</emphasis>"      , "*")
+    };
+
+    // ---------------------------------------------------------------------------------------------------
+    // sinks
+
+    /**
+       Appends everything as is.
+     */
+    static public class TextSink implements Sink {
+        protected StringBuilder output;
+
+        public TextSink(StringBuilder output) {
+            this.output = output;
+        }
+
+        public void append(CharSequence text, int start, int end) {
+            this.output.append(text, start, end);
+        }
+
+        public void token(int token) {
+        }
+
+        public void finish() {
+        }
+    }
+
+    /**
+       Escapes '&', '<' and '>'.
+     */
+    static public class HTMLPreSink extends TextSink {
+
+        public HTMLPreSink(StringBuilder output) {
+            super(output);
+        }
+
+        public void append(CharSequence text, int start, int end) {
+            int plain = start;
+            for (int i=start; i<end; i++) {
+                String escaped;
+                switch (text.charAt(i)) {
+                    case '&': escaped = "&amp;"; break;
+                    case '>': escaped = "&gt;";  break;
+                    case '<': escaped = "&lt;";  break;
+                    default : continue;
+                }
+                this.output.append(text, plain, i).append(escaped);
+                plain = i + 1;
+            }
+            this.output.append(text, plain, end);
+        }
+    }
+
+    /**
+       Escapes '&', '<' and '>', turns "§(" and "§)" into '<' and '>'
+       and removes blanks at the beginning of lines.
+     */
+    static public class WikiSink extends TextSink {
+        protected boolean section;
+        protected boolean skip_blanks;
+
+        public WikiSink(StringBuilder output) {
+            super(output);
+            this.skip_blanks = true;
+        }
+
+        public void append(CharSequence text, int start, int end) {
+            StringBuilder output = this.output;
+            for (int i=start; i<end; i++) {
+                char c = text.charAt(i);
+                if (this.section) {
+                    this.section = false;
+                    if (c == '(' || c == ')') {
+                        output.append(c == '(' ? '<' : '>');
+                        this.skip_blanks = false;
+                        continue;
+                    }
+                    output.append('§');
+                    this.skip_blanks = false;
+                }
+                switch (c) {
+                    case '§' : this.section = true; break;
+                    case '&' : output.append("&amp;"); this.skip_blanks = false; break;
+                    case '>' : output.append("&gt;");  this.skip_blanks = false; break;
+                    case '<' : output.append("&lt;");  this.skip_blanks = false; break;
+                    case ' ' : if (this.skip_blanks == false) { output.append(' '); } break;
+                    case '\n': output.append('\n');    this.skip_blanks = true;  break;
+                    default  : output.append(c);       this.skip_blanks = false; break;
+                }
+            }
+        }
+
+        public void finish() {
+            if (this.section) {
+                this.section = false;
+                this.output.append('§');
+            }
+        }
+    }
+
+    static public final String JAVA_ROW_SEPARATOR   = "\n=========================================\n";
+    static public final String JAVA_ENTRY_SEPARATOR = "\n  -------------------------------------  \n";
+
+    /**
+       Table layout of the JAVA target: collects the blanks, newlines
+       and row and entry tags between other text, and replaces them like
+       the regular expressions "</entry>[ \n]*</row>", "</row>[ \n]*<row>",
+       "[ \n]*(<row>|</row>)[ \n]*" and "[ \n]*</entry>[ \n]*" in this
+       order did.
+     */
+    static public class JavaTableSink implements Sink {
+        protected Sink          next;
+        protected StringBuilder segment;
+        protected boolean       tags;
+
+        public JavaTableSink(Sink next) {
+            this.next    = next;
+            this.segment = new StringBuilder();
+        }
+
+        public void append(CharSequence text, int start, int end) {
+            int i = start;
+            while (i < end) {
+                char c;
+                while (i < end && ((c = text.charAt(i)) == ' ' || c == '\n')) {
+                    this.segment.append(c);
+                    i++;
+                }
+                if (i == end) { break; }
+                this.flush();
+                int other = i;
+                while (i < end && (c = text.charAt(i)) != ' ' && c != '\n') { i++; }
+                this.next.append(text, other, i);
+            }
+        }
+
+        public void token(int token) {
+            this.segment.append(token == ENTRY_END ? 'E' : token == ROW_END ? 'R' : 'S');
+            this.tags = true;
+        }
+
+        public void finish() {
+            this.flush();
+            this.next.finish();
+        }
+
+        protected void flush() {
+            if (this.segment.length() == 0) { return; }
+            String segment = this.segment.toString();
+            this.segment.setLength(0);
+            if (this.tags) {
+                this.tags = false;
+                segment = collapse(segment, 'E', 'R');
+                segment = collapse(segment, 'R', 'S');
+                segment = surround(segment, "RS", "\n=\n");
+                segment = surround(segment, "E", JAVA_ENTRY_SEPARATOR);
+                segment = segment.replace("=", JAVA_ROW_SEPARATOR.substring(1, JAVA_ROW_SEPARATOR.length() - 1));
+            }
+            this.next.append(segment, 0, segment.length());
+        }
+
+        // first [ \n]* second -> second
+        static protected String collapse(String segment, char first, char second) {
+            if (segment.indexOf(first) == -1) { return segment; }
+            StringBuilder result = new StringBuilder(segment.length());
+            int len = segment.length();
+            int i   = 0;
+            while (i < len) {
+                char c = segment.charAt(i);
+                if (c == first) {
+                    int j = i + 1;
+                    while (j < len && ((c = segment.charAt(j)) == ' ' || c == '\n')) { j++; }
+                    if (j < len && segment.charAt(j) == second) {
+                        result.append(second);
+                        i = j + 1;
+                        continue;
+                    }
+                    c = first;
+                }
+                result.append(c);
+                i++;
+            }
+            return result.toString();
+        }
+
+        // [ \n]* (one of tags) [ \n]* -> replacement
+        static protected String surround(String segment, String tags, String replacement) {
+            StringBuilder result = new StringBuilder(segment.length() + 16);
+            int len = segment.length();
+            int i   = 0;
+            while (i < len) {
+                int  j = i;
+                char c;
+                while (j < len && ((c = segment.charAt(j)) == ' ' || c == '\n')) { j++; }
+                if (j < len && tags.indexOf(segment.charAt(j)) != -1) {
+                    j++;
+                    while (j < len && ((c = segment.charAt(j)) == ' ' || c == '\n')) { j++; }
+                    result.append(replacement);
+                } else if (j == i) {
+                    result.append(segment.charAt(j++));
+                } else {
+                    result.append(segment, i, j);
+                }
+                i = j;
+            }
+            return result.toString();
+        }
+    }
+
+    static protected Pattern java_blanks_after_newline;
+    static protected Pattern java_leading_blanks;
+    static protected Pattern java_trailing_blanks;
+    static protected Pattern java_empty_lines;
+
+    static {
+        java_blanks_after_newline = Pattern.compile("\n( *)");
+        java_leading_blanks       = Pattern.compile("^[\n ]*");
+        java_trailing_blanks      = Pattern.compile("[\n ]*$");
+        java_empty_lines          = Pattern.compile(" *\n *(\n *)+");
+    }
+
+    /**
+       Line layout of the JAVA target, like the regular expressions
+       "\n( *)" -> "\n", "^[\n ]*" -> "", "[\n ]*$" -> "",
+       " *\n *(\n *)+" -> "\n\n" in this order did, with newlines and
+       quotes escaped for Java string literals.
+
+       Runs of blanks and line terminators are held back until the next
+       other char; common runs of blanks and newlines are handled
+       directly, others (and the one at the end) with these patterns.
+     */
+    static public class JavaTextSink extends TextSink {
+        protected StringBuilder pending;
+        protected boolean       simple;
+        protected boolean       started;
+
+        public JavaTextSink(StringBuilder output) {
+            super(output);
+            this.pending = new StringBuilder();
+            this.simple  = true;
+        }
+
+        public void append(CharSequence text, int start, int end) {
+            StringBuilder output = this.output;
+            for (int i=start; i<end; i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case ' ': case '\n':
+                        this.pending.append(c);
+                        break;
+                    case '\r': case '\u0085': case '\u2028': case '\u2029':
+                        this.pending.append(c);
+                        this.simple = false;
+                        break;
+                    default:
+                        if (this.pending.length() > 0) { this.flush(false); }
+                        this.started = true;
+                        if (c == '"') {
+                            output.append("\\\"");
+                        } else {
+                            output.append(c);
+                        }
+                        break;
+                }
+            }
+        }
+
+        public void finish() {
+            this.flush(true);
+        }
+
+        protected void flush(boolean at_end) {
+            StringBuilder pending = this.pending;
+            if (this.simple && at_end == false) {
+                if (this.started) {
+                    int len    = pending.length();
+                    int blanks = 0;
+                    while (blanks < len && pending.charAt(blanks) == ' ') { blanks++; }
+                    int newlines = 0;
+                    for (int i=blanks; i<len; i++) {
+                        if (pending.charAt(i) == '\n') { newlines++; }
+                    }
+                    if (newlines >= 2) {
+                        this.output.append("\\n\\n");
+                    } else {
+                        for (int i=0; i<blanks; i++) { this.output.append(' '); }
+                        if (newlines == 1) { this.output.append("\\n"); }
+                    }
+                }
+            } else {
+                String run = java_blanks_after_newline.matcher(pending).replaceAll("\n");
+                if (this.started == false) {
+                    run = java_leading_blanks.matcher(run).replaceFirst("");
+                }
+                if (at_end) {
+                    run = java_trailing_blanks.matcher(run).replaceFirst("");
+                }
+                run = java_empty_lines.matcher(run).replaceAll("\n\n");
+                if (run.isEmpty() == false) {
+                    this.started = true;
+                    this.output.append(run.replace("\n", "\\n"));
+                }
+            }
+            pending.setLength(0);
+            this.simple = true;
+        }
+    }
+}
@@ -27,12 +27,12 @@ import com.sphenon.basics.services.*;
 import java.util.regex.*;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Vector;
-import java.util.Base64;
 import java.text.*;
 
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -110,67 +110,19 @@ public enum Encoding {
     FIXED      // string with fixed length
     ;
 
+    static protected HashMap<String,Encoding> encodings_by_name;
+    static {
+        encodings_by_name = new HashMap<String,Encoding>();
+        for (Encoding encoding : values()) {
+            encodings_by_name.put(encoding.name(), encoding);
+        }
+    }
+
     static public Encoding getEncoding(CallContext context, String encoding) {
-        encoding = encoding.replaceFirst("\\(.*","");
-        if (encoding.equalsIgnoreCase("NONE"        )) { return NONE        ; }
-        if (encoding.equalsIgnoreCase("ID"          )) { return ID          ; }
-        if (encoding.equalsIgnoreCase("TPLPH"       )) { return TPLPH       ; }
-        if (encoding.equalsIgnoreCase("URI"         )) { return URI         ; }
-        if (encoding.equalsIgnoreCase("URIFORM"     )) { return URIFORM     ; }
-        if (encoding.equalsIgnoreCase("UTF8"        )) { return UTF8        ; }
-        if (encoding.equalsIgnoreCase("SHA1"        )) { return SHA1        ; }
-        if (encoding.equalsIgnoreCase("SA"          )) { return SA          ; }
-        if (encoding.equalsIgnoreCase("VSA"         )) { return VSA         ; }
-        if (encoding.equalsIgnoreCase("VSAU"        )) { return VSAU        ; }
-        if (encoding.equalsIgnoreCase("FILENAME"    )) { return FILENAME    ; }
-        if (encoding.equalsIgnoreCase("SUBDOMAIN"   )) { return SUBDOMAIN   ; }
-        if (encoding.equalsIgnoreCase("JAVA"        )) { return JAVA        ; }
-        if (encoding.equalsIgnoreCase("JAVASCRIPT"  )) { return JAVASCRIPT  ; }
-        if (encoding.equalsIgnoreCase("JSSINGLE"    )) { return JSSINGLE    ; }
-        if (encoding.equalsIgnoreCase("JSDOUBLE"    )) { return JSDOUBLE    ; }
-        if (encoding.equalsIgnoreCase("JAVAID"      )) { return JAVAID      ; }
-        if (encoding.equalsIgnoreCase("JAVASQLID"   )) { return JAVASQLID   ; }
-        if (encoding.equalsIgnoreCase("JAVAPROP"    )) { return JAVAPROP    ; }
-        if (encoding.equalsIgnoreCase("CSV"         )) { return CSV         ; }
-        if (encoding.equalsIgnoreCase("QUOTEDD"     )) { return QUOTEDD     ; }
-        if (encoding.equalsIgnoreCase("QUOTEDS"     )) { return QUOTEDS     ; }
-        if (encoding.equalsIgnoreCase("DOCBOOK"     )) { return DOCBOOK     ; }
-        if (encoding.equalsIgnoreCase("DOCPAGE"     )) { return DOCPAGE     ; }
-        if (encoding.equalsIgnoreCase("DOCLET"      )) { return DOCLET      ; }
-        if (encoding.equalsIgnoreCase("JAVADOC"     )) { return JAVADOC     ; }
-        if (encoding.equalsIgnoreCase("HTML"        )) { return HTML        ; }
-        if (encoding.equalsIgnoreCase("HTMLPRE"     )) { return HTMLPRE     ; }
-        if (encoding.equalsIgnoreCase("WIKI"        )) { return WIKI        ; }
-        if (encoding.equalsIgnoreCase("XML"         )) { return XML         ; }
-        if (encoding.equalsIgnoreCase("XMLATT"      )) { return XMLATT      ; }
-        if (encoding.equalsIgnoreCase("XMLITEXT"    )) { return XMLITEXT    ; }
-        if (encoding.equalsIgnoreCase("MC"          )) { return MC          ; }
-        if (encoding.equalsIgnoreCase("LCU"         )) { return LCU         ; }
-        if (encoding.equalsIgnoreCase("MCB"         )) { return MCB         ; }
-        if (encoding.equalsIgnoreCase("LC"          )) { return LC          ; }
-        if (encoding.equalsIgnoreCase("UCU"         )) { return UCU         ; }
-        if (encoding.equalsIgnoreCase("UC"          )) { return UC          ; }
-        if (encoding.equalsIgnoreCase("CB"          )) { return CB          ; }
-        if (encoding.equalsIgnoreCase("STUC"        )) { return STUC        ; }
-        if (encoding.equalsIgnoreCase("SQL"         )) { return SQL         ; }
-        if (encoding.equalsIgnoreCase("SQLID"       )) { return SQLID       ; }
-        if (encoding.equalsIgnoreCase("INDENT"      )) { return INDENT      ; }
-        if (encoding.equalsIgnoreCase("ABBREV"      )) { return ABBREV      ; }
-        if (encoding.equalsIgnoreCase("INTEGER"     )) { return INTEGER     ; }
-        if (encoding.equalsIgnoreCase("FLOAT"       )) { return FLOAT       ; }
-        if (encoding.equalsIgnoreCase("FORMAT"      )) { return FORMAT      ; }
-        if (encoding.equalsIgnoreCase("REGEXP"      )) { return REGEXP      ; }
-        if (encoding.equalsIgnoreCase("REXT"        )) { return REXT        ; }
-        if (encoding.equalsIgnoreCase("REGRP"       )) { return REGRP       ; }
-        if (encoding.equalsIgnoreCase("REESC"       )) { return REESC       ; }
-        if (encoding.equalsIgnoreCase("MAP"         )) { return MAP         ; }
-        if (encoding.equalsIgnoreCase("JSON"        )) { return JSON        ; }
-        if (encoding.equalsIgnoreCase("TEX"         )) { return TEX         ; }
-        if (encoding.equalsIgnoreCase("BASE64"      )) { return BASE64      ; }
-        if (encoding.equalsIgnoreCase("DSP"         )) { return DSP         ; }
-        if (encoding.equalsIgnoreCase("SSP"         )) { return SSP         ; }
-        if (encoding.equalsIgnoreCase("FIXED"       )) { return FIXED       ; }
-        return null;
+        int pos = encoding.indexOf('(');
+        if (pos != -1) { encoding = encoding.substring(0, pos); }
+        Encoding result = encodings_by_name.get(encoding);
+        return result != null ? result : encodings_by_name.get(encoding.toUpperCase(java.util.Locale.ROOT));
     }
 
     static protected Pattern optpat;
@@ -204,14 +156,72 @@ public enum Encoding {
         public String recode(CallContext context, String link, HashMap<String,String> attributes);
     }
 
+    /**
+       Optional extension of LinkRecoder which resolves all links of a
+       document in one call, e.g. with a single query or in parallel.
+       The results are in the order of the requests, null for links which
+       can't be recoded. Link recoders without this extension are called
+       once per link.
+     */
+    static public interface BatchLinkRecoder extends LinkRecoder {
+        public List<String> recodeLinks(CallContext context, List<String> links, List<HashMap<String,String>> attributes);
+    }
+
+    /**
+       Collects the link requests of a document in a first pass, which
+       only gathers and doesn't append anything, and answers the second
+       pass from the results of the batch. Links which were not collected
+       are passed on to the link recoder one by one.
+     */
+    static protected class LinkBatch implements LinkRecoder {
+        protected BatchLinkRecoder              link_recoder;
+        protected List<String>                  links;
+        protected List<HashMap<String,String>>  attributes;
+        protected HashMap<List<Object>,String>  results;
+
+        public LinkBatch(BatchLinkRecoder link_recoder) {
+            this.link_recoder = link_recoder;
+            this.links        = new ArrayList<String>();
+            this.attributes   = new ArrayList<HashMap<String,String>>();
+            this.results      = new HashMap<List<Object>,String>();
+        }
+
+        public void add(CallContext context, String link, HashMap<String,String> attributes) {
+            List<Object> key = Arrays.asList(link, attributes);
+            if (this.results.containsKey(key) == false) {
+                this.results.put(key, null);
+                this.links.add(link);
+                this.attributes.add(attributes);
+            }
+        }
+
+        public LinkBatch resolve(CallContext context) {
+            if (this.links.isEmpty()) { return this; }
+            List<String> resolved = this.link_recoder.recodeLinks(context, this.links, this.attributes);
+            if (resolved == null || resolved.size() != this.links.size()) {
+                CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Batch link recoder returned %(got) results for %(requested) links", "got", resolved == null ? 0 : resolved.size(), "requested", this.links.size());
+                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+            }
+            for (int i=0; i<resolved.size(); i++) {
+                this.results.put(Arrays.asList(this.links.get(i), this.attributes.get(i)), resolved.get(i));
+            }
+            return this;
+        }
+
+        public String recode(CallContext context, String link, HashMap<String,String> attributes) {
+            List<Object> key = Arrays.asList(link, attributes);
+            if (this.results.containsKey(key)) { return this.results.get(key); }
+            return this.link_recoder.recode(context, link, attributes);
+        }
+    }
+
     // [Concept:Actions HTMLAction.template,emos.doclet,DocletToHTML.template,Encoding.java,DocletLinkRecoder.java,emacsworkspace.el,getslash.landscape,/etc/landscape/landscape.json,fetch_landscape.bash,VUIAdapterReflectedJavaInstance.java,EmacsTree.java,shortcuts.xuxf,shortcuts.ews]
+    // results can be cached across documents, see AbbreviationCache
     static public interface AbbreviationRecoder {
         public String recodeAbbreviation(CallContext context, String abbreviation, Map<String,String> recoding_options);
         public Pattern getAbbreviationPattern(CallContext context);
     }
 
-    static protected Pattern uri_escape;
-    static protected Pattern vsa_escape;
     static protected Pattern link_pattern;
     static protected Pattern link_att_pattern;
     static protected Pattern medialink_pattern;
@@ -228,12 +238,6 @@ public enum Encoding {
                     String current_regexp = null;
                     try {
 
-                        current_regexp = "%([A-Fa-f0-9][A-Fa-f0-9])";
-                        uri_escape = Pattern.compile(current_regexp);
-
-                        current_regexp = "_([A-Fa-f0-9][A-Fa-f0-9])";
-                        vsa_escape = Pattern.compile(current_regexp);
-
                         current_regexp = "(?:(<(?:link|mediaobject|inlinemediaobject))(?:\\s+([^>]*))?>)|(?:(</(?:link|mediaobject|inlinemediaobject)>))";
                         link_pattern = Pattern.compile(current_regexp);
 
@@ -258,18 +262,102 @@ public enum Encoding {
     // ----------
 
     static public String recodeByString(CallContext context, Object object, String recoding) {
-        EncodingStep[] steps = EncodingStep.buildFromString(context, recoding);
-        return recode(context, com.sphenon.basics.message.t.s(context, object), steps, null);
+        return getRecodingPipeline(context, recoding).recode(context, com.sphenon.basics.message.t.s(context, object), (RecodingTargetContext) null);
     }
 
     static public StringBuilder recodeByString(CallContext context, Object object, StringBuilder output, String recoding) {
-        EncodingStep[] steps = EncodingStep.buildFromString(context, recoding);
-        return recode(context, com.sphenon.basics.message.t.s(context, object), output, steps, null);
+        StringBuilder result = getRecodingPipeline(context, recoding).recode(context, (CharSequence) com.sphenon.basics.message.t.s(context, object), (Appendable) output, (RecodingTargetContext) null);
+        return output != null ? output : result;
     }
 
     static public StringBuilder recodeByString(CallContext context, Object object, Appendable appendable, String recoding) {
-        EncodingStep[] steps = EncodingStep.buildFromString(context, recoding);
-        return recode(context, com.sphenon.basics.message.t.s(context, object), appendable, steps, null);
+        return getRecodingPipeline(context, recoding).recode(context, (CharSequence) com.sphenon.basics.message.t.s(context, object), appendable, (RecodingTargetContext) null);
+    }
+
+    // ----------
+
+    static protected volatile BoundedCache<String,RecodingPipeline> recoding_pipeline_cache;
+
+    static public BoundedCache<String,RecodingPipeline> getRecodingPipelineCache(CallContext context) {
+        if (recoding_pipeline_cache == null) {
+            synchronized (Encoding.class) {
+                if (recoding_pipeline_cache == null) {
+                    recoding_pipeline_cache = new BoundedCache<String,RecodingPipeline>(context, 1024);
+                }
+            }
+        }
+        return recoding_pipeline_cache;
+    }
+
+    /**
+       Returns the pipeline for a recoding specification like
+       "URI/UTF8/ABBREV(8)"; pipelines are immutable and are parsed only
+       once per specification, as long as they stay in the cache.
+     */
+    static public RecodingPipeline getRecodingPipeline(CallContext context, String recoding) {
+        return getRecodingPipelineCache(context).get(context, recoding, (ctx, key) -> new RecodingPipeline(ctx, key));
+    }
+
+    static protected volatile BoundedCache<List<Object>,RecodingPipeline> step_pipeline_cache;
+
+    static protected BoundedCache<List<Object>,RecodingPipeline> getStepPipelineCache(CallContext context) {
+        if (step_pipeline_cache == null) {
+            synchronized (Encoding.class) {
+                if (step_pipeline_cache == null) {
+                    step_pipeline_cache = new BoundedCache<List<Object>,RecodingPipeline>(context, 1024);
+                }
+            }
+        }
+        return step_pipeline_cache;
+    }
+
+    /**
+       Returns the pipeline for the given steps; it is cached by the
+       encodings and options of the steps, if all options are plain
+       values like strings and numbers, and built anew otherwise.
+     */
+    static public RecodingPipeline getRecodingPipeline(CallContext context, EncodingStep... steps) {
+        List<Object> key = getStepPipelineKey(context, steps);
+        if (key == null) {
+            return new RecodingPipeline(context, steps);
+        }
+        return getStepPipelineCache(context).get(context, key, (ctx, k) -> new RecodingPipeline(ctx, steps));
+    }
+
+    // a copy of the steps, since steps and option arrays may be modified later
+    static protected List<Object> getStepPipelineKey(CallContext context, EncodingStep[] steps) {
+        List<Object> key = new ArrayList<Object>(steps.length);
+        for (EncodingStep step : steps) {
+            if (step == null) {
+                key.add(null);
+                continue;
+            }
+            List<Object> step_key = new ArrayList<Object>();
+            step_key.add(step.getEncoding(context));
+            Object[] options = step.getOptions(context);
+            if (options != null) {
+                for (Object option : options) {
+                    if (isPlainOption(option) == false) {
+                        return null;
+                    }
+                    step_key.add(option);
+                }
+            }
+            key.add(step_key);
+        }
+        return key;
+    }
+
+    // options which can be part of a cache key
+    static protected boolean isPlainOption(Object option) {
+        return (    option == null
+                 || option instanceof String
+                 || option instanceof Integer
+                 || option instanceof Long
+                 || option instanceof Boolean
+                 || option instanceof Character
+                 || option instanceof Encoding
+               );
     }
 
     // ----------
@@ -306,48 +394,21 @@ public enum Encoding {
         if (steps == null) {
             return recoding_target_context == null ? string : recoding_target_context.processOutput(context, string);
         }
-        
-        EncodingStep previous = null;
-        for (EncodingStep step : steps) {
-            if (previous != null && step != null) {
-                string = recode(context, string, previous, step, recoding_target_context);
-            }
-            previous = step;
+        if (string == null) {
+            return null;
         }
-        return string;
+        return getRecodingPipeline(context, steps).recode(context, string, recoding_target_context);
     }
 
-    // only tested in a few situations yet
     static public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, EncodingStep[] steps, RecodingTargetContext recoding_target_context) {
         if (steps == null || steps.length == 0) {
             return recode(context, string, output, null, null, recoding_target_context);
         }
-        
-        EncodingStep previous = null;
-        EncodingStep last = null;
-        for (EncodingStep step : steps) {
-            if (previous != null && step != null) {
-                last = step;
-            }
-            previous = step;
-        }
-
-        if (last == null) {
-            return recode(context, string, output, null, null, recoding_target_context);
-        }
-
-        previous = null;
-        for (EncodingStep step : steps) {
-            if (previous != null && step != null) {
-                if (step != last) {
-                    string = recode(context, string, null, previous, step, recoding_target_context);
-                } else {
-                    output = recode(context, string, output, previous, step, recoding_target_context);
-                }
-            }
-            previous = step;
+        if (string == null) {
+            return null;
         }
-
+        output = prepareOutput(context, output, string.length());
+        getRecodingPipeline(context, steps).recode(context, string, (Appendable) output, recoding_target_context);
         return output;
     }
 
@@ -356,33 +417,7 @@ public enum Encoding {
             return recode(context, string, appendable, null, null, recoding_target_context);
         }
 
-        EncodingStep previous = null;
-        EncodingStep last = null;
-        for (EncodingStep step : steps) {
-            if (previous != null && step != null) {
-                last = step;
-            }
-            previous = step;
-        }
-
-        if (last == null) {
-            return recode(context, string, appendable, null, null, recoding_target_context);
-        }
-
-        StringBuilder new_output = null;
-        previous = null;
-        for (EncodingStep step : steps) {
-            if (previous != null && step != null) {
-                if (step != last) {
-                    string = new CharSourceCharSequence(context, recode(context, string, (Appendable) null, previous, step, recoding_target_context));
-                } else {
-                    new_output = recode(context, string, appendable, previous, step, recoding_target_context);
-                }
-            }
-            previous = step;
-        }
-
-        return new_output;
+        return getRecodingPipeline(context, steps).recode(context, string, appendable, recoding_target_context);
     }
 
     static public StringBuilder recode(CallContext context, CharSequence sequence, Appendable appendable, EncodingStep[] steps, RecodingTargetContext recoding_target_context) {
@@ -469,6 +504,35 @@ public enum Encoding {
         }
     }
 
+    // typed and validated variant, used when binding options to a Recoder;
+    // option strings from recoding specifications are converted if possible
+    static protected<T> T getOption(CallContext context, int index, T default_value, Class<T> type, Object[] options) {
+        if (options == null || options.length <= index || options[index] == null) {
+            return default_value;
+        }
+        Object option = options[index];
+        if (type.isInstance(option)) {
+            return type.cast(option);
+        }
+        if (type == String.class && option instanceof Integer) {
+            return type.cast(option.toString());
+        }
+        if (type == Integer.class && option instanceof String) {
+            try {
+                return type.cast(Integer.valueOf(((String) option).trim()));
+            } catch (NumberFormatException nfe) {
+            }
+        }
+        CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Recoding option #%(index) '%(option)' is not of expected type '%(type)'", "index", index, "option", option, "type", type.getName());
+        throw (ExceptionPreConditionViolation) null; // compiler insists
+    }
+
+    // maps are passed without their type arguments, the entries can't be checked here
+    @SuppressWarnings("unchecked")
+    static protected<V> Map<String,V> getMapOption(CallContext context, int index, Object[] options) {
+        return (Map<String,V>) getOption(context, index, null, Map.class, options);
+    }
+
     // ----------
 
     static public String recode(CallContext context, String string, Encoding source, Encoding target, RecodingTargetContext recoding_target_context, Object... options) {
@@ -478,79 +542,9 @@ public enum Encoding {
             return null;
         }
 
-        if (source == target) {
-        }
-        else if (source == ID       && target == TPLPH     ) { string = recode_ID_TPLPH(context, string, recoding_target_context); }
-        else if (source == URI      && target == UTF8      ) { string = recode_URI_UTF8(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == URI       ) { string = recode_UTF8_URI(context, string, recoding_target_context); }
-        else if (source == URIFORM  && target == UTF8      ) { string = recode_URIFORM_UTF8(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == URIFORM   ) { string = recode_UTF8_URIFORM(context, string, recoding_target_context); }
-        else if (source == VSA      && target == UTF8      ) { string = recode_VSA_UTF8(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == VSA       ) { string = recode_UTF8_VSA(context, string, recoding_target_context); }
-        else if (source == VSAU     && target == UTF8      ) { string = recode_VSAU_UTF8(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == VSAU      ) { string = recode_UTF8_VSAU(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == SA        ) { string = recode_UTF8_SA(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == FILENAME  ) { string = recode_UTF8_FILENAME(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == SUBDOMAIN  ) { string = recode_UTF8_SUBDOMAIN(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == SHA1      ) { string = recode_UTF8_SHA1(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JAVA      ) { string = recode_UTF8_JAVA(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JAVASCRIPT) { string = recode_UTF8_JAVASCRIPT(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JSSINGLE  ) { string = recode_UTF8_JSSINGLE(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JSDOUBLE  ) { string = recode_UTF8_JSDOUBLE(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JAVAID    ) { string = recode_UTF8_JAVAID(context, string, recoding_target_context); }
-        else if (source == LCU      && target == JAVAID    ) { string = recode_LCU_JAVAID(context, string, recoding_target_context); }
-        else if (source == LC       && target == JAVAID    ) { string = recode_LC_JAVAID(context, string, recoding_target_context); }
-        else if (source == MC       && target == JAVAID    ) { string = recode_MC_JAVAID(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == JAVASQLID ) { string = recode_UTF8_JAVASQLID(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == CSV       ) { string = recode_UTF8_CSV(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == QUOTEDD   ) { string = recode_UTF8_QUOTEDD(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == QUOTEDS   ) { string = recode_UTF8_QUOTEDS(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == XML       ) { string = recode_UTF8_XML(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == XMLATT    ) { string = recode_UTF8_XMLATT(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == SQL       ) { string = recode_UTF8_SQL(context, string, recoding_target_context); }
-        else if (source == UCU      && target == SQLID     ) { string = recode_UCU_SQLID(context, string, recoding_target_context); }
-        else if (source == UCU      && target == LCU       ) { string = recode_UCU_LCU(context, string, recoding_target_context); }
-        else if (source == XMLITEXT && target == UTF8      ) { string = recode_XMLITEXT_UTF8(context, string, recoding_target_context); }
-        else if (source == XML      && target == UTF8      ) { string = recode_XML_UTF8(context, string, recoding_target_context); }
-        else if (source == MC       && target == LCU       ) { string = recode_MC_LCU(context, string, recoding_target_context); }
-        else if (source == MC       && target == MCB       ) { string = recode_MC_MCB(context, string, recoding_target_context); }
-        else if (source == MC       && target == LC        ) { string = recode_MC_LC(context, string, recoding_target_context); }
-        else if (source == MC       && target == UCU       ) { string = recode_MC_UCU(context, string, recoding_target_context); }
-        else if (source == MC       && target == UC        ) { string = recode_MC_UC(context, string, recoding_target_context); }
-        else if (source == MC       && target == STUC      ) { string = recode_MC_STUC(context, string, recoding_target_context); }
-        else if (source == MC       && target == CB        ) { string = recode_MC_CB(context, string, recoding_target_context); }
-        else if (source == LCU      && target == MC        ) { string = recode_LCU_MC(context, string, recoding_target_context); }
-        else if (source == LCU      && target == UCU       ) { string = recode_LCU_UCU(context, string, recoding_target_context); }
-        else if (source == MCB      && target == MC        ) { string = recode_MCB_MC(context, string, recoding_target_context); }
-        else if (source == LC       && target == UC        ) { string = recode_LC_UC(context, string, recoding_target_context); }
-        else if (source == LCU      && target == LCD       ) { string = recode_LCU_LCD(context, string, recoding_target_context); }
-        else if (source == LCD      && target == LCU       ) { string = recode_LCD_LCU(context, string, recoding_target_context); }
-        else if (source == JAVADOC  && target == DOCBOOK   ) { string = recode_JAVADOC_DOCBOOK(context, string, recoding_target_context); }
-        else if (source == DOCBOOK  && target == JAVADOC   ) { string = recode_DOCBOOK_JAVADOC(context, string, recoding_target_context); }
-        else if (source == DOCBOOK  && target == HTML      ) { string = recode_DOCBOOK_HTML(context, string, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Integer) 3, options)); }
-        else if (source == DOCBOOK  && target == HTMLPRE   ) { string = recode_DOCBOOK_HTMLPRE(context, string, recoding_target_context); }
-        else if (source == DOCBOOK  && target == JAVA      ) { string = recode_DOCBOOK_JAVA(context, string, recoding_target_context); }
-        else if (source == XML      && target == JAVAPROP  ) { string = recode_XML_JAVAPROP(context, string, recoding_target_context); }
-        else if (source == DOCBOOK  && target == WIKI      ) { string = recode_DOCBOOK_WIKI(context, string, recoding_target_context); }
-        else if (source == DOCPAGE  && target == HTML      ) { string = recode_DOCPAGE_HTML(context, string, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Map) null, options)); }
-        else if (source == UTF8     && target == INDENT    ) { string = recode_UTF8_INDENT(context, string, recoding_target_context, getOption(context, 0, " ", options), getOption(context, 1, (Integer) 0, options)); }
-        else if (source == UTF8     && target == ABBREV    ) { string = recode_UTF8_ABBREV(context, string, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, "...", options)); }
-        else if (source == INTEGER  && target == FORMAT    ) { string = recode_INTEGER_FORMAT(context, string, recoding_target_context, getOption(context, 0, "", options)); }
-        else if (source == FLOAT    && target == FORMAT    ) { string = recode_FLOAT_FORMAT(context, string, recoding_target_context, getOption(context, 0, "", options)); }
-        else if (source == UTF8     && target == FORMAT    ) { string = recode_UTF8_FORMAT(context, string, recoding_target_context, getOption(context, 0, "", options)); }
-        else if (source == UTF8     && target == REGEXP    ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, "", options)); }
-        else if (source == UTF8     && target == REXT      ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, getOption(context, 0, "", options), "$1"); }
-        else if (source == UTF8     && target == REGRP      ) { string = recode_UTF8_REGRP(context, string, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, (Integer) 1, options)); }
-        else if (source == UTF8     && target == FIXED     ) { string = recode_UTF8_FIXED(context, string, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, " ", options), getOption(context, 2, "L", options), getOption(context, 3, (Integer) 0, options), getOption(context, 4, "", options)); }
-        else if (source == UTF8     && target == REESC     ) { string = recode_UTF8_REESC(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == MAP       ) { string = recode_UTF8_MAP(context, string, recoding_target_context, getOption(context, 0, (Map<String,String>) null, options), getOption(context, 1, (String) null, options)); }
-        else if (source == UTF8     && target == JSON      ) { string = recode_UTF8_JSON(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == TEX       ) { string = recode_UTF8_TEX(context, string, recoding_target_context); }
-        else if (source == BASE64   && target == UTF8      ) { string = recode_BASE64_UTF8(context, string, recoding_target_context); }
-        else if (source == UTF8     && target == BASE64    ) { string = recode_UTF8_BASE64(context, string, recoding_target_context); }
-
-        else if (source == DSP      && target == SSP       ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, "\\.", "/"); }
-        else if (source == SSP      && target == DSP       ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, "/", "."); }
+        if (source != target) {
+            string = getRecoder(context, source, target, options).recode(context, string, recoding_target_context);
+        }
 
         return recoding_target_context == null ? string : recoding_target_context.processOutput(context, string);
     }
@@ -564,80 +558,8 @@ public enum Encoding {
         } else if (source == target) {
             output = prepareOutput(context, output, string.length());
             output.append(string);
-        }
-        else if (source == ID       && target == TPLPH     ) { output = recode_ID_TPLPH(context, string, output, recoding_target_context); }
-        else if (source == URI      && target == UTF8      ) { output = recode_URI_UTF8(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == URI       ) { output = recode_UTF8_URI(context, string, output, recoding_target_context); }
-//        else if (source == URIFORM  && target == UTF8      ) { output = recode_URIFORM_UTF8(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == URIFORM   ) { output = recode_UTF8_URIFORM(context, string, output, recoding_target_context); }
-//        else if (source == VSA      && target == UTF8      ) { output = recode_VSA_UTF8(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == VSA       ) { output = recode_UTF8_VSA(context, string, output, recoding_target_context); }
-//        else if (source == VSAU     && target == UTF8      ) { output = recode_VSAU_UTF8(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == VSAU      ) { output = recode_UTF8_VSAU(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == SA        ) { output = recode_UTF8_SA(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == FILENAME  ) { output = recode_UTF8_FILENAME(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == SUBDOMAIN  ) { output = recode_UTF8_SUBDOMAIN(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == SHA1      ) { output = recode_UTF8_SHA1(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == JAVA      ) { output = recode_UTF8_JAVA(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == JAVASCRIPT) { output = recode_UTF8_JAVASCRIPT(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == JSSINGLE  ) { output = recode_UTF8_JSSINGLE(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == JSDOUBLE  ) { output = recode_UTF8_JSDOUBLE(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == JAVAID    ) { output = recode_UTF8_JAVAID(context, string, output, recoding_target_context); }
-//        else if (source == LCU      && target == JAVAID    ) { output = recode_LCU_JAVAID(context, string, output, recoding_target_context); }
-//        else if (source == LC       && target == JAVAID    ) { output = recode_LC_JAVAID(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == JAVAID    ) { output = recode_MC_JAVAID(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == JAVASQLID ) { output = recode_UTF8_JAVASQLID(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == CSV       ) { output = recode_UTF8_CSV(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == QUOTEDD   ) { output = recode_UTF8_QUOTEDD(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == QUOTEDS   ) { output = recode_UTF8_QUOTEDS(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == XML       ) { output = recode_UTF8_XML(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == XMLATT    ) { output = recode_UTF8_XMLATT(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == SQL       ) { output = recode_UTF8_SQL(context, string, output, recoding_target_context); }
-//        else if (source == UCU      && target == SQLID     ) { output = recode_UCU_SQLID(context, string, output, recoding_target_context); }
-//        else if (source == UCU      && target == LCU       ) { output = recode_UCU_LCU(context, string, output, recoding_target_context); }
-//        else if (source == XMLITEXT && target == UTF8      ) { output = recode_XMLITEXT_UTF8(context, string, output, recoding_target_context); }
-//        else if (source == XML      && target == UTF8      ) { output = recode_XML_UTF8(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == LCU       ) { output = recode_MC_LCU(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == MCB       ) { output = recode_MC_MCB(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == LC        ) { output = recode_MC_LC(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == UCU       ) { output = recode_MC_UCU(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == UC        ) { output = recode_MC_UC(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == CB        ) { output = recode_MC_CB(context, string, output, recoding_target_context); }
-//        else if (source == MC       && target == STUC      ) { output = recode_MC_STUC(context, string, output, recoding_target_context); }
-//        else if (source == LCU      && target == MC        ) { output = recode_LCU_MC(context, string, output, recoding_target_context); }
-//        else if (source == LCU      && target == UCU       ) { output = recode_LCU_UCU(context, string, output, recoding_target_context); }
-//        else if (source == MCB      && target == MC        ) { output = recode_MCB_MC(context, string, output, recoding_target_context); }
-//        else if (source == LC       && target == UC        ) { output = recode_LC_UC(context, string, output, recoding_target_context); }
-//        else if (source == LCU      && target == LCD       ) { output = recode_LCU_LCD(context, string, output, recoding_target_context); }
-//        else if (source == LCD      && target == LCU       ) { output = recode_LCD_LCU(context, string, output, recoding_target_context); }
-//        else if (source == JAVADOC  && target == DOCBOOK   ) { output = recode_JAVADOC_DOCBOOK(context, string, output, recoding_target_context); }
-//        else if (source == DOCBOOK  && target == JAVADOC   ) { output = recode_DOCBOOK_JAVADOC(context, string, output, recoding_target_context); }
-//        else if (source == DOCBOOK  && target == HTML      ) { output = recode_DOCBOOK_HTML(context, string, output, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Integer) 3, options)); }
-//        else if (source == DOCBOOK  && target == HTMLPRE   ) { output = recode_DOCBOOK_HTMLPRE(context, string, output, recoding_target_context); }
-//        else if (source == DOCBOOK  && target == JAVA      ) { output = recode_DOCBOOK_JAVA(context, string, output, recoding_target_context); }
-//        else if (source == XML      && target == JAVAPROP  ) { output = recode_XML_JAVAPROP(context, string, output, recoding_target_context); }
-//        else if (source == DOCBOOK  && target == WIKI      ) { output = recode_DOCBOOK_WIKI(context, string, output, recoding_target_context); }
-        else if (source == DOCPAGE  && target == HTML      ) { output = recode_DOCPAGE_HTML(context, string, output, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Map) null, options)); }
-//        else if (source == UTF8     && target == INDENT    ) { output = recode_UTF8_INDENT(context, string, output, recoding_target_context, getOption(context, 0, " ", options), getOption(context, 1, (Integer) 0, options)); }
-//        else if (source == UTF8     && target == ABBREV    ) { output = recode_UTF8_ABBREV(context, string, output, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, "...", options)); }
-//        else if (source == INTEGER  && target == FORMAT    ) { output = recode_INTEGER_FORMAT(context, string, output, recoding_target_context, getOption(context, 0, "", options)); }
-//        else if (source == FLOAT    && target == FORMAT    ) { output = recode_FLOAT_FORMAT(context, string, output, recoding_target_context, getOption(context, 0, "", options)); }
-//        else if (source == UTF8     && target == FORMAT    ) { output = recode_UTF8_FORMAT(context, string, output, recoding_target_context, getOption(context, 0, "", options)); }
-//        else if (source == UTF8     && target == REGEXP    ) { output = recode_UTF8_REGEXP(context, string, output, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, "", options)); }
-//        else if (source == UTF8     && target == REXT      ) { output = recode_UTF8_REGEXP(context, string, output, recoding_target_context, getOption(context, 0, "", options), "$1"); }
-//        else if (source == UTF8     && target == REGRP     ) { output = recode_UTF8_REGEXP(context, string, output, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, (Integer) 1, options)); }
-//        else if (source == UTF8     && target == FIXED     ) { output = recode_UTF8_FIXED(context, string, output, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, " ", options), getOption(context, 2, "L", options), getOption(context, 3, (Integer) 0, options), getOption(context, 4, "", options)); }
-//        else if (source == UTF8     && target == REESC     ) { output = recode_UTF8_REESC(context, string, output, recoding_target_context); }
-//        else if (source == UTF8     && target == MAP       ) { output = recode_UTF8_MAP(context, string, output, recoding_target_context, getOption(context, 0, (Map<String,String>) null, options), getOption(context, 1, (String) null, options)); }
-        else if (source == UTF8     && target == JSON      ) { output = recode_UTF8_JSON(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == TEX       ) { output = recode_UTF8_TEX(context, string, output, recoding_target_context); }
-        else if (source == BASE64   && target == UTF8      ) { output = recode_BASE64_UTF8(context, string, output, recoding_target_context); }
-        else if (source == UTF8     && target == BASE64    ) { output = recode_UTF8_BASE64(context, string, output, recoding_target_context); }
-//        else if (source == DSP      && target == SSP       ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, "\\.", "/"); }
-//        else if (source == SSP      && target == DSP       ) { output = recode_UTF8_REGEXP(context, string, output, recoding_target_context, "/", "."); }
-        else {
-            CustomaryContext.create((Context)context).throwLimitation(context, "Recoding CharSequence '%(string)' into StringBuilder '%(output)' from '%(source)' to '%(target)' is not implemented yet", "string", string.getClass().getName(), "output", output.getClass().getName(), "source", source, "target", target);
-            throw (ExceptionLimitation) null; // compilernsists
+        } else {
+            output = getRecoder(context, source, target, options).recode(context, string, output, recoding_target_context);
         }
 
         // [Issue:Performance(1) - see above]
@@ -662,83 +584,7 @@ public enum Encoding {
             output.append(context, string);
             return output.to_return;
         }
-        // else if (source == ID       && target == TPLPH     ) { return recode_ID_TPLPH(context, string, appendable, recoding_target_context); }
-        // else if (source == URI      && target == UTF8      ) { return recode_URI_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == URI       ) { return recode_UTF8_URI(context, string, appendable, recoding_target_context); }
-        // else if (source == URIFORM  && target == UTF8      ) { return recode_URIFORM_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == URIFORM   ) { return recode_UTF8_URIFORM(context, string, appendable, recoding_target_context); }
-        // else if (source == VSA      && target == UTF8      ) { return recode_VSA_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == VSA       ) { return recode_UTF8_VSA(context, string, appendable, recoding_target_context); }
-        // else if (source == VSAU     && target == UTF8      ) { return recode_VSAU_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == VSAU      ) { return recode_UTF8_VSAU(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == SA        ) { return recode_UTF8_SA(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == FILENAME  ) { return recode_UTF8_FILENAME(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == SUBDOMAIN ) { return recode_UTF8_SUBDOMAIN(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == SHA1      ) { return recode_UTF8_SHA1(context, string, appendable, recoding_target_context); }
-        else if (source == UTF8     && target == JAVA      ) { return recode_UTF8_JAVA(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == JAVASCRIPT) { return recode_UTF8_JAVASCRIPT(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == JSSINGLE  ) { return recode_UTF8_JSSINGLE(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == JSDOUBLE  ) { return recode_UTF8_JSDOUBLE(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == JAVAID    ) { return recode_UTF8_JAVAID(context, string, appendable, recoding_target_context); }
-        // else if (source == LCU      && target == JAVAID    ) { return recode_LCU_JAVAID(context, string, appendable, recoding_target_context); }
-        // else if (source == LC       && target == JAVAID    ) { return recode_LC_JAVAID(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == JAVAID    ) { return recode_MC_JAVAID(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == JAVASQLID ) { return recode_UTF8_JAVASQLID(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == CSV       ) { return recode_UTF8_CSV(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == QUOTEDD   ) { return recode_UTF8_QUOTEDD(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == QUOTEDS   ) { return recode_UTF8_QUOTEDS(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == XML       ) { return recode_UTF8_XML(context, string, appendable, recoding_target_context); }
-        else if (source == UTF8     && target == XMLATT    ) { return recode_UTF8_XMLATT(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == SQL       ) { return recode_UTF8_SQL(context, string, appendable, recoding_target_context); }
-        // else if (source == UCU      && target == SQLID     ) { return recode_UCU_SQLID(context, string, appendable, recoding_target_context); }
-        // else if (source == UCU      && target == LCU       ) { return recode_UCU_LCU(context, string, appendable, recoding_target_context); }
-        // else if (source == XMLITEXT && target == UTF8      ) { return recode_XMLITEXT_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == XML      && target == UTF8      ) { return recode_XML_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == LCU       ) { return recode_MC_LCU(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == MCB       ) { return recode_MC_MCB(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == LC        ) { return recode_MC_LC(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == UCU       ) { return recode_MC_UCU(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == UC        ) { return recode_MC_UC(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == CB        ) { return recode_MC_CB(context, string, appendable, recoding_target_context); }
-        // else if (source == MC       && target == STUC      ) { return recode_MC_STUC(context, string, appendable, recoding_target_context); }
-        // else if (source == LCU      && target == MC        ) { return recode_LCU_MC(context, string, appendable, recoding_target_context); }
-        // else if (source == LCU      && target == UCU       ) { return recode_LCU_UCU(context, string, appendable, recoding_target_context); }
-        // else if (source == MCB      && target == MC        ) { return recode_MCB_MC(context, string, appendable, recoding_target_context); }
-        // else if (source == LC       && target == UC        ) { return recode_LC_UC(context, string, appendable, recoding_target_context); }
-        // else if (source == LCU      && target == LCD       ) { return recode_LCU_LCD(context, string, appendable, recoding_target_context); }
-        // else if (source == LCD      && target == LCU       ) { return recode_LCD_LCU(context, string, appendable, recoding_target_context); }
-        // else if (source == JAVADOC  && target == DOCBOOK   ) { return recode_JAVADOC_DOCBOOK(context, string, appendable, recoding_target_context); }
-        // else if (source == DOCBOOK  && target == JAVADOC   ) { return recode_DOCBOOK_JAVADOC(context, string, appendable, recoding_target_context); }
-        // else if (source == DOCBOOK  && target == HTML      ) { return recode_DOCBOOK_HTML(context, string, appendable, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Integer) 3, options)); }
-        // else if (source == DOCBOOK  && target == HTMLPRE   ) { return recode_DOCBOOK_HTMLPRE(context, string, appendable, recoding_target_context); }
-        // else if (source == DOCBOOK  && target == JAVA      ) { return recode_DOCBOOK_JAVA(context, string, appendable, recoding_target_context); }
-        // else if (source == XML      && target == JAVAPROP  ) { return recode_XML_JAVAPROP(context, string, appendable, recoding_target_context); }
-        // else if (source == DOCBOOK  && target == WIKI      ) { return recode_DOCBOOK_WIKI(context, string, appendable, recoding_target_context); }
-        // else if (source == DOCPAGE  && target == HTML      ) { return recode_DOCPAGE_HTML(context, string, appendable, recoding_target_context, getOption(context, 0, (LinkRecoder) null, options), getOption(context, 1, (Map) null, options)); }
-        // else if (source == UTF8     && target == INDENT    ) { return recode_UTF8_INDENT(context, string, appendable, recoding_target_context, getOption(context, 0, " ", options), getOption(context, 1, (Integer) 0, options)); }
-        // else if (source == UTF8     && target == ABBREV    ) { return recode_UTF8_ABBREV(context, string, appendable, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, "...", options)); }
-        // else if (source == INTEGER  && target == FORMAT    ) { return recode_INTEGER_FORMAT(context, string, appendable, recoding_target_context, getOption(context, 0, "", options)); }
-        // else if (source == FLOAT    && target == FORMAT    ) { return recode_FLOAT_FORMAT(context, string, appendable, recoding_target_context, getOption(context, 0, "", options)); }
-        // else if (source == UTF8     && target == FORMAT    ) { return recode_UTF8_FORMAT(context, string, appendable, recoding_target_context, getOption(context, 0, "", options)); }
-        // else if (source == UTF8     && target == REGEXP    ) { return recode_UTF8_REGEXP(context, string, appendable, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, "", options)); }
-        // else if (source == UTF8     && target == REXT      ) { return recode_UTF8_REGEXP(context, string, appendable, recoding_target_context, getOption(context, 0, "", options), "$1"); }
-        // else if (source == UTF8     && target == REGRP     ) { return recode_UTF8_REGEXP(context, string, appendable, recoding_target_context, getOption(context, 0, "", options), getOption(context, 1, (Integer) 1, options)); }
-        // else if (source == UTF8     && target == FIXED     ) { return recode_UTF8_FIXED(context, string, appendable, recoding_target_context, getOption(context, 0, (Integer) 32, options), getOption(context, 1, " ", options), getOption(context, 2, "L", options), getOption(context, 3, (Integer) 0, options), getOption(context, 4, "", options)); }
-        // else if (source == UTF8     && target == REESC     ) { return recode_UTF8_REESC(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == MAP       ) { return recode_UTF8_MAP(context, string, appendable, recoding_target_context, getOption(context, 0, (Map<String,String>) null, options), getOption(context, 1, (String) null, options)); }
-        else if (source == UTF8     && target == JSON      ) { return recode_UTF8_JSON(context, string, appendable, recoding_target_context); }
-        else if (source == UTF8     && target == TEX       ) { return recode_UTF8_TEX(context, string, appendable, recoding_target_context); }
-        // else if (source == BASE64   && target == UTF8      ) { return recode_BASE64_UTF8(context, string, appendable, recoding_target_context); }
-        // else if (source == UTF8     && target == BASE64    ) { return recode_UTF8_BASE64(context, string, appendable, recoding_target_context); }
-        // else if (source == DSP      && target == SSP       ) { string = recode_UTF8_REGEXP(context, string, recoding_target_context, "\\.", "/"); }
-        // else if (source == SSP      && target == DSP       ) { return recode_UTF8_REGEXP(context, string, appendable, recoding_target_context, "/", "."); }
-        else {
-            if (string instanceof CharSourceCharSequence && appendable instanceof StringBuilder) {
-                return recode(context, ((CharSourceCharSequence) string).getCharSequence(context), (StringBuilder) appendable, source, target, recoding_target_context, options);
-            }
-            CustomaryContext.create((Context)context).throwLimitation(context, "Recoding CharSource '%(string)' into Appendable '%(appendable)' from '%(source)' to '%(target)' is not implemented yet", "string", string.getClass().getName(), "appendable", appendable.getClass().getName(), "source", source, "target", target);
-            throw (ExceptionLimitation) null; // compilernsists
-        }
+        return getRecoder(context, source, target, options).recode(context, string, appendable, recoding_target_context);
     }
 
     static public StringBuilder recode(CallContext context, CharSequence sequence, Appendable appendable, Encoding source, Encoding target, RecodingTargetContext recoding_target_context, Object... options) {
@@ -802,6 +648,8 @@ public enum Encoding {
         return output;
     }
 
+    static protected final int BLOCK_SIZE = 4096;
+
     static public class Output {
         public StringBuilder to_return;
         public Appendable appendable;
@@ -820,6 +668,17 @@ public enum Encoding {
                 CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not recode char sequence, writing to appendable failed");
             }
         }            
+        public void append(CallContext context, char[] chars, int offset, int length) {
+            try {
+                if (this.appendable instanceof StringBuilder) {
+                    ((StringBuilder) this.appendable).append(chars, offset, length);
+                } else {
+                    this.appendable.append(java.nio.CharBuffer.wrap(chars, offset, length));
+                }
+            } catch (IOException ioe) {
+                CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not recode char sequence, writing to appendable failed");
+            }
+        }            
         public void append(CallContext context, CharSource cs) {
             try {
                 cs.appendTo(context, this.appendable);
@@ -858,133 +717,839 @@ public enum Encoding {
         return null;
     }
 
-    // ---------------------------------------------------------------------------------------------------
-    // ---------------------------------------------------------------------------------------------------
+    // ----------
+
+    static public final Recoder IDENTITY = new Recoder() {
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return string;
+        }
+
+        public RecodingTransducer getTransducer(CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+            return new RecodingTransducer(context, appendable, recoding_target_context) {
+                public void put(CallContext context, char c) {
+                    this.output.append(context, c);
+                }
+                public void put(CallContext context, char[] buffer, int offset, int length) {
+                    this.output.append(context, buffer, offset, length);
+                }
+                public Appendable append(CharSequence csq) {
+                    this.output.append(this.context, csq);
+                    return this;
+                }
+            };
+        }
+    };
+
+    static public final EscapeTable JAVA_ESCAPES =
+        new EscapeTable(false)
+            .escape('\n', "\\n")
+            .escape('\r', "\\r")
+            .escape('\t', "\\t")
+            .escape('"',  "\\\"")
+            .escape('\\', "\\\\")
+            .escapeUnicode(0x00, 0x20)
+            .escapeUnicode(0x80, 0x10000);
+
+    // JS escapings according to
+    // http://ecma-international.org/ecma-262/5.1/#sec-7.8.4
+
+    static public final EscapeTable JSSINGLE_ESCAPES =
+        new EscapeTable(false)
+            .escape('\b', "\\b")
+            .escape('\f', "\\f")
+            .escape('\n', "\\n")
+            .escape('\r', "\\r")
+            .escape('\t', "\\t")
+            .escape('\u000B', "\\v")
+            .escape('\'', "\\\'")
+            .escape('\\', "\\\\")
+            .escapeUnicode(0x00, 0x20)
+            .escapeUnicode(0x80, 0x10000);
+
+    static public final EscapeTable JSDOUBLE_ESCAPES =
+        new EscapeTable(false)
+            .escape('\b', "\\b")
+            .escape('\f', "\\f")
+            .escape('\n', "\\n")
+            .escape('\r', "\\r")
+            .escape('\t', "\\t")
+            .escape('\u000B', "\\v")
+            .escape('"',  "\\\"")
+            .escape('\\', "\\\\")
+            .escapeUnicode(0x00, 0x20)
+            .escapeUnicode(0x80, 0x10000);
+
+    // '/' is only escaped after '<', which JSONTransducer takes care of,
+    // so the table is not usable on its own
+    static protected final EscapeTable JSON_ESCAPES =
+        new EscapeTable(true)
+            .escape('\\', "\\\\")
+            .escape('"',  "\\\"")
+            .escape('/',  "/")
+            .escape('\b', "\\b")
+            .escape('\t', "\\t")
+            .escape('\n', "\\n")
+            .escape('\f', "\\f")
+            .escape('\r', "\\r")
+            .escapeUnicode(0x00, 0x20)
+            .escapeUnicode(0x80, 0xA0)
+            .escapeUnicode(0x2000, 0x2100);
+
+    static public final EscapeTable XML_ESCAPES =
+        new EscapeTable(false)
+            .escape('<', "&lt;")
+            .escape('>', "&gt;")
+            .escape('&', "&amp;");
+
+    static public final EscapeTable XMLATT_ESCAPES =
+        new EscapeTable(false)
+            .escape('<',  "&lt;")
+            .escape('>',  "&gt;")
+            .escape('&',  "&amp;")
+            .escape('"',  "&quot;")
+            .escape('\'', "&apos;")
+            .escape('\n', "&#13;&#10;");
+
+    static public final EscapeTable CSV_ESCAPES =
+        new EscapeTable(false)
+            .escape('"',  "\"\"");
+
+    static public final EscapeTable QUOTEDD_ESCAPES =
+        new EscapeTable(false)
+            .escape('"',  "\\\"")
+            .escape('\\', "\\\\");
+
+    static public final EscapeTable SQL_ESCAPES =
+        new EscapeTable(false)
+            .escape('\'', "''");
+
+    static public final EscapeTable QUOTEDS_ESCAPES =
+        new EscapeTable(false)
+            .escape('\'', "\\'")
+            .escape('\\', "\\\\");
+
     // ---------------------------------------------------------------------------------------------------
 
-    static public String recode_ID_TPLPH(CallContext context, String string) {
-        return recode_ID_TPLPH(context, string, (RecodingTargetContext) null);
-    }
+    /**
+       All supported recodings, indexed by source and target ordinal.
+       Entries are unbound, options are bound per use via Recoder.bind.
+     */
+    static protected Recoder[][] recoder_matrix;
 
-    static public StringBuilder recode_ID_TPLPH(CallContext context, CharSequence string, StringBuilder output) {
-        return recode_ID_TPLPH(context, string, output, (RecodingTargetContext) null);
+    static protected void register(Encoding source, Encoding target, Recoder recoder) {
+        recoder_matrix[source.ordinal()][target.ordinal()] = recoder;
     }
 
-    static public String recode_ID_TPLPH(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return recode_ID_TPLPH(context, string, null, recoding_target_context).toString();
+    static protected StringBuilder orOutput(StringBuilder created, StringBuilder output) {
+        return created != null ? created : output;
     }
 
-    static public StringBuilder recode_ID_TPLPH(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
-        int len = string.length();
-        output = prepareOutput(context, output, len + 3);
+    static {
+        int count = values().length;
+        recoder_matrix = new Recoder[count][count];
+
+        register(ID      , TPLPH     , new Recoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_ID_TPLPH(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_ID_TPLPH(ctx, string, output, rtc); }
+        });
+        register(URI     , UTF8      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_URI_UTF8(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_URI_UTF8(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new PercentDecoder(ctx, output, false); }
+        });
+        register(UTF8    , URI       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_URI(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_UTF8_URI(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new PercentEncoder(ctx, output, false); }
+        });
+        register(URIFORM , UTF8      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_URIFORM_UTF8(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new PercentDecoder(ctx, output, true); }
+        });
+        register(UTF8    , URIFORM   , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_URIFORM(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return PercentEncoder.encode(ctx, string, 0, string.length(), prepareOutput(ctx, output, string.length() + 16), true); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new PercentEncoder(ctx, output, true); }
+        });
+        register(VSA     , UTF8      , new VSADecodingRecoder());
+        register(UTF8    , VSA       , new VSAEncodingRecoder(VSAEncoder.VSA));
+        register(VSAU    , UTF8      , new VSADecodingRecoder());
+        register(UTF8    , VSAU      , new VSAEncodingRecoder(VSAEncoder.VSAU));
+        register(UTF8    , SA        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_SA(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new SATransducer(ctx, output); }
+        });
+        register(UTF8    , FILENAME  , new VSAEncodingRecoder(VSAEncoder.FILENAME));
+        register(UTF8    , SUBDOMAIN , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_SUBDOMAIN(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new SubdomainTransducer(ctx, output); }
+        });
+        register(UTF8    , SHA1      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_SHA1(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new SHA1Transducer(ctx, output); }
+        });
+        register(UTF8    , JAVA      , new EscapingRecoder(JAVA_ESCAPES));
+        register(UTF8    , JAVASCRIPT, (ctx, string, rtc) -> recode_UTF8_JAVASCRIPT(ctx, string, rtc));
+        register(UTF8    , JSSINGLE  , new EscapingRecoder(JSSINGLE_ESCAPES));
+        register(UTF8    , JSDOUBLE  , new EscapingRecoder(JSDOUBLE_ESCAPES));
+        register(UTF8    , JAVAID    , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_JAVAID(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new KeywordTransducer(ctx, output, JAVA_KEYWORD_SET, "j_"); }
+        });
+        register(LCU     , JAVAID    , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LCU_JAVAID(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new KeywordTransducer(ctx, output, JAVA_KEYWORD_SET, "j_"); }
+        });
+        register(LC      , JAVAID    , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LC_JAVAID(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new KeywordTransducer(ctx, output, JAVA_KEYWORD_SET, "j"); }
+        });
+        register(MC      , JAVAID    , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_JAVAID(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new KeywordTransducer(ctx, output, JAVA_MC_KEYWORD_SET, "J"); }
+        });
+        register(UTF8    , JAVASQLID , (ctx, string, rtc) -> recode_UTF8_JAVASQLID(ctx, string, rtc));
+        register(UTF8    , CSV       , new EscapingRecoder(CSV_ESCAPES));
+        register(UTF8    , QUOTEDD   , new EscapingRecoder(QUOTEDD_ESCAPES));
+        register(UTF8    , QUOTEDS   , new EscapingRecoder(QUOTEDS_ESCAPES));
+        register(UTF8    , XML       , new EscapingRecoder(XML_ESCAPES));
+        register(UTF8    , XMLATT    , new EscapingRecoder(XMLATT_ESCAPES));
+        register(UTF8    , SQL       , new EscapingRecoder(SQL_ESCAPES));
+        register(UCU     , SQLID     , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UCU_SQLID(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new KeywordTransducer(ctx, output, SQL_UC_KEYWORD_SET, "X_"); }
+        });
+        register(UCU     , LCU       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UCU_LCU(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CaseTransducer(ctx, output, false); }
+        });
+        register(XMLITEXT, UTF8      , (ctx, string, rtc) -> recode_XMLITEXT_UTF8(ctx, string, rtc));
+        register(XML     , UTF8      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_XML_UTF8(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new XMLTransducer(ctx, output); }
+        });
+        register(MC      , LCU       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_LCU(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new MCTransducer(ctx, output, LCU); }
+        });
+        register(MC      , MCB       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_MCB(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new MCTransducer(ctx, output, MCB); }
+        });
+        register(MC      , LC        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_LC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CaseTransducer(ctx, output, false); }
+        });
+        register(MC      , UCU       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_UCU(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new MCTransducer(ctx, output, UCU); }
+        });
+        register(MC      , UC        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_UC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CaseTransducer(ctx, output, true); }
+        });
+        register(MC      , STUC      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_STUC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new FirstCharTransducer(ctx, output, true); }
+        });
+        register(MC      , CB        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MC_CB(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new FirstCharTransducer(ctx, output, false); }
+        });
+        register(LCU     , MC        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LCU_MC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new LCUMCTransducer(ctx, output); }
+        });
+        register(LCU     , UCU       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LCU_UCU(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CaseTransducer(ctx, output, true); }
+        });
+        register(MCB     , MC        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_MCB_MC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CharReplacingTransducer(ctx, output, ' ', -1); }
+        });
+        register(LC      , UC        , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LC_UC(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CaseTransducer(ctx, output, true); }
+        });
+        register(LCU     , LCD       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LCU_LCD(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CharReplacingTransducer(ctx, output, '_', '-'); }
+        });
+        register(LCD     , LCU       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_LCD_LCU(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new CharReplacingTransducer(ctx, output, '-', '_'); }
+        });
+        register(JAVADOC , DOCBOOK   , (ctx, string, rtc) -> recode_JAVADOC_DOCBOOK(ctx, string, rtc));
+        register(DOCBOOK , JAVADOC   , (ctx, string, rtc) -> recode_DOCBOOK_JAVADOC(ctx, string, rtc));
+        register(DOCBOOK , HTML      , new DocBookHTMLRecoder(null, 3));
+        register(DOCBOOK , HTMLPRE   , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_DOCBOOK_HTMLPRE(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_DOCBOOK_HTMLPRE(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new DocBookTransducer(ctx, output, HTMLPRE, null); }
+        });
+        register(DOCBOOK , JAVA      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_DOCBOOK_JAVA(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_DOCBOOK_JAVA(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new DocBookTransducer(ctx, output, JAVA, null); }
+        });
+        register(XML     , JAVAPROP  , (ctx, string, rtc) -> recode_XML_JAVAPROP(ctx, string, rtc));
+        register(DOCBOOK , WIKI      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_DOCBOOK_WIKI(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_DOCBOOK_WIKI(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new DocBookTransducer(ctx, output, WIKI, null); }
+        });
+        register(DOCPAGE , HTML      , new DocPageHTMLRecoder(null, null));
+        register(UTF8    , INDENT    , new IndentRecoder(" ", 0));
+        register(UTF8    , ABBREV    , new AbbrevRecoder(32, "..."));
+        register(INTEGER , FORMAT    , new FormatRecoder(INTEGER));
+        register(FLOAT   , FORMAT    , new FormatRecoder(FLOAT));
+        register(UTF8    , FORMAT    , new FormatRecoder(UTF8));
+        register(UTF8    , REGEXP    , new RegexpRecoder(REGEXP));
+        register(UTF8    , REXT      , new RegexpRecoder(REXT));
+        register(UTF8    , REGRP     , new RegrpRecoder());
+        register(UTF8    , FIXED     , new FixedRecoder());
+        register(UTF8    , REESC     , (ctx, string, rtc) -> recode_UTF8_REESC(ctx, string, rtc));
+        register(UTF8    , MAP       , new MapRecoder(null, null));
+        register(UTF8    , JSON      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_JSON(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new JSONTransducer(ctx, output); }
+        });
+        register(UTF8    , TEX       , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_UTF8_TEX(ctx, string, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new TeXTransducer(ctx, output); }
+        });
+        register(BASE64  , UTF8      , new StreamingRecoder() {
+            public String recode(CallContext ctx, String string, RecodingTargetContext rtc) { return recode_BASE64_UTF8(ctx, string, rtc); }
+            public StringBuilder recode(CallContext ctx, CharSequence string, StringBuilder output, RecodingTargetContext rtc) { return recode_BASE64_UTF8(ctx, string, output, rtc); }
+            protected RecodingTransducer createTransducer(CallContext ctx, Output output, RecodingTargetContext rtc) { return new Base64Decoder(ctx, output); }
+        });
+        register(UTF8    , BASE64    , new Base64Recoder(0));
+        register(DSP     , SSP       , (ctx, string, rtc) -> string.replace('.', '/'));
+        register(SSP     , DSP       , (ctx, string, rtc) -> string.replace('/', '.'));
+    }
 
-        StringBuffer sb = new StringBuffer();
+    /**
+       Resolves the recoder for the given source and target encoding and
+       binds the given options to it. Identical encodings, NONE and
+       unknown (null) encodings recode as identity, any other pair for
+       which no recoder is registered is rejected.
+     */
+    static public Recoder getRecoder(CallContext context, Encoding source, Encoding target, Object... options) {
+        initialise(context);
 
-        sb.append("${");
-        sb.append(string);
-        sb.append('}');
+        if (source == target || source == null || target == null || source == NONE || target == NONE) {
+            return IDENTITY;
+        }
 
-        output.append(sb);
+        Recoder recoder = recoder_matrix[source.ordinal()][target.ordinal()];
+        if (recoder == null) {
+            CustomaryContext.create((Context)context).throwLimitation(context, "Recoding from '%(source)' to '%(target)' is not supported", "source", source, "target", target);
+            throw (ExceptionLimitation) null; // compiler insists
+        }
 
-        return output;
+        List<Object> key = getBoundRecoderKey(context, source, target, options);
+        if (key == null) {
+            return recoder.bind(context, options);
+        }
+        return getBoundRecoderCache(context).get(context, key, (ctx, k) -> recoder.bind(ctx, options));
     }
 
-    // ---------------------------------------------------------------------------------------------------
+    static protected volatile BoundedCache<List<Object>,Recoder> bound_recoder_cache;
 
-    // not really for UTF8 (only ASCII), but should
-    static public String recode_URI_UTF8(CallContext context, String string) {
-        return recode_URI_UTF8(context, string, (RecodingTargetContext) null);
+    static protected BoundedCache<List<Object>,Recoder> getBoundRecoderCache(CallContext context) {
+        if (bound_recoder_cache == null) {
+            synchronized (Encoding.class) {
+                if (bound_recoder_cache == null) {
+                    bound_recoder_cache = new BoundedCache<List<Object>,Recoder>(context, 1024);
+                }
+            }
+        }
+        return bound_recoder_cache;
+    }
+
+    // null if the options can't be part of a key, recoders bound to
+    // such options are not shared
+    static protected List<Object> getBoundRecoderKey(CallContext context, Encoding source, Encoding target, Object[] options) {
+        List<Object> key = new ArrayList<Object>(2 + (options == null ? 0 : options.length));
+        key.add(source);
+        key.add(target);
+        if (options != null) {
+            for (Object option : options) {
+                if (isPlainOption(option) == false) {
+                    return null;
+                }
+                key.add(option);
+            }
+        }
+        return key;
     }
 
-    static public StringBuilder recode_URI_UTF8(CallContext context, CharSequence string, StringBuilder output) {
-        return recode_URI_UTF8(context, string, output, (RecodingTargetContext) null);
-    }
+    // ----------
 
-    static public String recode_URI_UTF8(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return recode_URI_UTF8(context, string, null, recoding_target_context).toString();
+    /**
+       Base for recoders which are able to process their input char by
+       char; streaming and transducing are both based on the transducer
+       created by the subclass.
+     */
+    static abstract protected class StreamingRecoder implements Recoder {
+        abstract protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context);
+
+        public StringBuilder recode(CallContext context, CharSource string, Appendable appendable, RecodingTargetContext recoding_target_context) {
+            if (string == null) { return null; }
+
+            Output output = prepareOutput(context, appendable, string, recoding_target_context);
+            transduce(context, string, this.createTransducer(context, output, recoding_target_context));
+            return output.to_return;
+        }
+
+        public RecodingTransducer getTransducer(CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+            return this.createTransducer(context, prepareOutput(context, appendable, (CharSource) null, recoding_target_context), recoding_target_context);
+        }
     }
 
-    static public StringBuilder recode_URI_UTF8(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
-        int len = string.length();
-        output = prepareOutput(context, output, len);
+    static protected class EscapingRecoder extends StreamingRecoder {
+        protected EscapeTable escapes;
 
-        Matcher m = uri_escape.matcher(string);
-        
-        // SUPPORT here %{hex} 
-        
-        // THIS IS *** ANNOYING ***
-        // it is because appendReplacement/appendTail
-        // do only support StringBuffer, but neither
-        // Appendable nor StringBuilder
-        // there are bug requests filed and possible
-        // it will be solved in future java releases
+        public EscapingRecoder(EscapeTable escapes) {
+            this.escapes = escapes;
+        }
 
-        StringBuffer sb = new StringBuffer();
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return this.escapes.escape(string);
+        }
 
-        while (m.find()) {
-            char c1 = m.group(1).toUpperCase().charAt(0);
-            char c2 = m.group(1).toUpperCase().charAt(1);
-            char c = (char) ((c1 - (c1 > 64 ? 55 : 48)) * 16 + (c2 - (c2 > 64 ? 55 : 48)));
-            m.appendReplacement(sb, "");
-            sb.append(c);
+        public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+            if (string == null) { return output; }
+            int len = string.length();
+            return this.escapes.escape(string, 0, len, prepareOutput(context, output, len + 8));
         }
-        m.appendTail(sb);
 
-        output.append(sb);
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new EscapingTransducer(context, output, this.escapes);
+        }
+    }
 
-        return output;
+    static protected class VSAEncodingRecoder extends StreamingRecoder {
+        protected int mode;
+
+        public VSAEncodingRecoder(int mode) {
+            this.mode = mode;
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return VSAEncoder.encode(context, string, this.mode);
+        }
+
+        public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+            if (string == null) { return output; }
+            int len = string.length();
+            return VSAEncoder.encode(context, string, 0, len, prepareOutput(context, output, len + 16), this.mode);
+        }
+
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new VSAEncoder(context, output, this.mode);
+        }
     }
 
-    // ---------------------------------------------------------------------------------------------------
+    static protected class VSADecodingRecoder extends StreamingRecoder {
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_VSA_UTF8(context, string, recoding_target_context);
+        }
 
-    // not really for UTF8 (only ASCII), but should
-    static public String recode_UTF8_URI(CallContext context, String string) {
-        return recode_UTF8_URI(context, string, (RecodingTargetContext) null);
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new PercentDecoder(context, output, '_', false, false);
+        }
     }
 
-    static public StringBuilder recode_UTF8_URI(CallContext context, CharSequence string, StringBuilder output) {
-        return recode_UTF8_URI(context, string, output, (RecodingTargetContext) null);
+    static protected class Base64Recoder extends StreamingRecoder {
+        protected int flags;
+
+        public Base64Recoder(int flags) {
+            this.flags = flags;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            int flags = Base64Encoder.getFlags(context, options);
+            return flags == this.flags ? this : new Base64Recoder(flags);
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_BASE64(context, string, null, recoding_target_context, this.flags).toString();
+        }
+
+        public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_BASE64(context, string, output, recoding_target_context, this.flags);
+        }
+
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new Base64Encoder(context, output, this.flags);
+        }
     }
 
-    static public String recode_UTF8_URI(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return recode_UTF8_URI(context, string, null, recoding_target_context).toString();
+    static protected void transduce(CallContext context, CharSource string, RecodingTransducer transducer) {
+        char[] buffer = new char[BLOCK_SIZE];
+        int n;
+        while ((n = string.read(context, buffer, 0, BLOCK_SIZE)) != -1) {
+            transducer.put(context, buffer, 0, n);
+        }
+        transducer.finish(context);
     }
 
-    static public StringBuilder recode_UTF8_URI(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
-        int len = string.length();
-        output = prepareOutput(context, output, len+8);
+    static protected class DocBookHTMLRecoder implements Recoder {
+        protected LinkRecoder       link_recoder;
+        protected Integer           heading_depth;
+        protected DocBookBlockCache block_cache;
 
-        for (int i=0; i<len; i++) {
-            char c = string.charAt(i);
-            if (c < 0) {
-                CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Expected only positive characters");
-                throw (ExceptionAssertionProvedFalse) null; // compiler insists
-            }
-            if (c > 16777215) {
-                output.append("%{" + hex[(c & 0xFF000000) >> 24] + hex[(c & 0xFF0000) >> 16] + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF] + "}");
-            } else if (c > 65535) {
-                output.append("%{" + hex[(c & 0xFF0000) >> 16] + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF] + "}");
-            } else if (c > 255) {
-                output.append("%{" + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF] + "}");
-            } else {
-                int code = (c > 0x007f ? 5 : URICharCode[c]);
-                output.append(code >= 2 ? ("%" + hex[c]) : c);
-            }
+        public DocBookHTMLRecoder(LinkRecoder link_recoder, Integer heading_depth) {
+            this(link_recoder, heading_depth, null);
         }
 
-        return output;
-    }
+        public DocBookHTMLRecoder(LinkRecoder link_recoder, Integer heading_depth, DocBookBlockCache block_cache) {
+            this.link_recoder  = link_recoder;
+            this.heading_depth = heading_depth;
+            this.block_cache   = block_cache;
+        }
 
-    final static public String[] hex =
-    {
-        "00", "01", "02", "03", "04", "05", "06", "07",
-        "08", "09", "0A", "0B", "0C", "0D", "0E", "0F",
-        "10", "11", "12", "13", "14", "15", "16", "17",
-        "18", "19", "1A", "1B", "1C", "1D", "1E", "1F",
-        "20", "21", "22", "23", "24", "25", "26", "27",
-        "28", "29", "2A", "2B", "2C", "2D", "2E", "2F",
-        "30", "31", "32", "33", "34", "35", "36", "37",
-        "38", "39", "3A", "3B", "3C", "3D", "3E", "3F",
+        public Recoder bind(CallContext context, Object... options) {
+            return new DocBookHTMLRecoder(getOption(context, 0, (LinkRecoder) null, LinkRecoder.class, options),
+                                          getOption(context, 1, (Integer) 3, Integer.class, options),
+                                          getOption(context, 2, (DocBookBlockCache) null, DocBookBlockCache.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_DOCBOOK_HTML(context, string, null, recoding_target_context, this.link_recoder, this.heading_depth, this.block_cache).toString();
+        }
+
+        public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+            return recode_DOCBOOK_HTML(context, string, output, recoding_target_context, this.link_recoder, this.heading_depth, this.block_cache);
+        }
+
+        // links are resolved over the whole document, so only plain
+        // recoding is streamed
+
+        public StringBuilder recode(CallContext context, CharSource string, Appendable appendable, RecodingTargetContext recoding_target_context) {
+            if (this.link_recoder != null || this.block_cache != null) {
+                return Recoder.super.recode(context, string, appendable, recoding_target_context);
+            }
+            if (string == null) { return null; }
+
+            Output output = prepareOutput(context, appendable, string, recoding_target_context);
+            transduce(context, string, new DocBookTransducer(context, output, HTML, this.heading_depth));
+            return output.to_return;
+        }
+
+        public RecodingTransducer getTransducer(CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+            if (this.link_recoder != null || this.block_cache != null) {
+                return Recoder.super.getTransducer(context, appendable, recoding_target_context);
+            }
+            return new DocBookTransducer(context, prepareOutput(context, appendable, (CharSource) null, recoding_target_context), HTML, this.heading_depth);
+        }
+    }
+
+    static protected class DocPageHTMLRecoder implements Recoder {
+        protected LinkRecoder       link_recoder;
+        protected Map<String,?>     arguments;
+        protected DocBookBlockCache block_cache;
+        protected AbbreviationCache abbreviation_cache;
+
+        public DocPageHTMLRecoder(LinkRecoder link_recoder, Map<String,?> arguments) {
+            this(link_recoder, arguments, null, null);
+        }
+
+        public DocPageHTMLRecoder(LinkRecoder link_recoder, Map<String,?> arguments, DocBookBlockCache block_cache, AbbreviationCache abbreviation_cache) {
+            this.link_recoder       = link_recoder;
+            this.arguments          = arguments;
+            this.block_cache        = block_cache;
+            this.abbreviation_cache = abbreviation_cache;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new DocPageHTMLRecoder(getOption(context, 0, (LinkRecoder) null, LinkRecoder.class, options),
+                                          getMapOption(context, 1, options),
+                                          getOption(context, 2, (DocBookBlockCache) null, DocBookBlockCache.class, options),
+                                          getOption(context, 3, getDefaultAbbreviationCache(context), AbbreviationCache.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_DOCPAGE_HTML(context, string, null, recoding_target_context, this.link_recoder, this.arguments, this.block_cache, this.abbreviation_cache).toString();
+        }
+
+        public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+            return recode_DOCPAGE_HTML(context, string, output, recoding_target_context, this.link_recoder, this.arguments, this.block_cache, this.abbreviation_cache);
+        }
+    }
+
+    static protected class IndentRecoder extends StreamingRecoder {
+        protected String indent;
+        protected Integer amount;
+
+        public IndentRecoder(String indent, Integer amount) {
+            this.indent = indent;
+            this.amount = amount;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new IndentRecoder(getOption(context, 0, " ", String.class, options),
+                                     getOption(context, 1, (Integer) 0, Integer.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_INDENT(context, string, recoding_target_context, this.indent, this.amount);
+        }
+
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new IndentTransducer(context, output, recoding_target_context, this.indent, this.amount);
+        }
+    }
+
+    static protected class AbbrevRecoder extends StreamingRecoder {
+        protected Integer limit;
+        protected String  postfix;
+
+        public AbbrevRecoder(Integer limit, String postfix) {
+            this.limit   = limit;
+            this.postfix = postfix;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new AbbrevRecoder(getOption(context, 0, (Integer) 32, Integer.class, options),
+                                     getOption(context, 1, "...", String.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_ABBREV(context, string, recoding_target_context, this.limit, this.postfix);
+        }
+
+        protected RecodingTransducer createTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context) {
+            return new AbbrevTransducer(context, output, this.limit, this.postfix);
+        }
+    }
+
+    static protected class FormatRecoder implements Recoder {
+        protected final Encoding       source;
+        protected final CompiledFormat compiled;
+
+        // the prototype, which is bound before use
+        public FormatRecoder(Encoding source) {
+            this.source   = source;
+            this.compiled = null;
+        }
+
+        public FormatRecoder(CallContext context, Encoding source, String format) {
+            this.source   = source;
+            this.compiled = CompiledFormat.get(context, format);
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new FormatRecoder(context, this.source, getOption(context, 0, "", String.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            switch (this.source) {
+                case INTEGER : return this.compiled.format(context, parseFormatInteger(context, string));
+                case FLOAT   : return this.compiled.format(context, parseFormatFloat(context, string));
+                default      : return this.compiled.format(context, string);
+            }
+        }
+    }
+
+    // the regular expression is compiled when binding, so syntax errors
+    // show up when the pipeline is built
+    static protected class RegexpRecoder implements Recoder {
+        protected final Encoding          target;
+        protected final RegexpReplacement compiled;
+
+        // the prototype, which is bound before use
+        public RegexpRecoder(Encoding target) {
+            this.target   = target;
+            this.compiled = null;
+        }
+
+        public RegexpRecoder(CallContext context, Encoding target, String pattern, String replacement) {
+            this.target   = target;
+            this.compiled = RegexpReplacement.get(context, pattern, replacement);
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new RegexpRecoder(context,
+                                     this.target,
+                                     getOption(context, 0, "", String.class, options),
+                                     this.target == REXT ? "$1" : getOption(context, 1, "", String.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return this.compiled.replaceAll(context, string);
+        }
+    }
+
+    static protected class RegrpRecoder implements Recoder {
+        protected final Pattern pattern;
+        protected final Integer subgroup;
+
+        // the prototype, which is bound before use
+        public RegrpRecoder() {
+            this.pattern  = null;
+            this.subgroup = null;
+        }
+
+        public RegrpRecoder(CallContext context, String regexp, Integer subgroup) {
+            this.pattern  = compileRegexp(context, regexp);
+            this.subgroup = subgroup;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new RegrpRecoder(context,
+                                    getOption(context, 0, "", String.class, options),
+                                    getOption(context, 1, (Integer) 1, Integer.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_REGRP(context, string, this.pattern, this.subgroup);
+        }
+    }
+
+    static protected class FixedRecoder implements Recoder {
+        protected final FixedLayout layout;
+
+        // the prototype, which is bound before use
+        public FixedRecoder() {
+            this.layout = null;
+        }
+
+        public FixedRecoder(CallContext context, Integer length, String fill_character, String justification, Integer max_length, String truncate_pattern) {
+            this.layout = new FixedLayout(context, length, fill_character, justification, max_length, truncate_pattern);
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            return new FixedRecoder(context,
+                                    getOption(context, 0, (Integer) 32, Integer.class, options),
+                                    getOption(context, 1, " ", String.class, options),
+                                    getOption(context, 2, "L", String.class, options),
+                                    getOption(context, 3, (Integer) 0, Integer.class, options),
+                                    getOption(context, 4, "", String.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return this.layout.apply(context, string);
+        }
+    }
+
+    static protected class MapRecoder implements Recoder {
+        protected Map<String,String> map;
+        protected String             default_value;
+
+        public MapRecoder(Map<String,String> map, String default_value) {
+            this.map           = map;
+            this.default_value = default_value;
+        }
+
+        public Recoder bind(CallContext context, Object... options) {
+            Map<String,String> map = getMapOption(context, 0, options);
+            if (map == null) {
+                CustomaryContext.create((Context)context).throwPreConditionViolation(context, "Recoding from UTF8 to MAP requires a map as first option");
+                throw (ExceptionPreConditionViolation) null; // compiler insists
+            }
+            return new MapRecoder(map, getOption(context, 1, (String) null, String.class, options));
+        }
+
+        public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+            return recode_UTF8_MAP(context, string, recoding_target_context, this.map, this.default_value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------
+    // ---------------------------------------------------------------------------------------------------
+    // ---------------------------------------------------------------------------------------------------
+
+    static public String recode_ID_TPLPH(CallContext context, String string) {
+        return recode_ID_TPLPH(context, string, (RecodingTargetContext) null);
+    }
+
+    static public StringBuilder recode_ID_TPLPH(CallContext context, CharSequence string, StringBuilder output) {
+        return recode_ID_TPLPH(context, string, output, (RecodingTargetContext) null);
+    }
+
+    static public String recode_ID_TPLPH(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        return recode_ID_TPLPH(context, string, null, recoding_target_context).toString();
+    }
+
+    static public StringBuilder recode_ID_TPLPH(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        int len = string.length();
+        output = prepareOutput(context, output, len + 3);
+
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("${");
+        sb.append(string);
+        sb.append('}');
+
+        output.append(sb);
+
+        return output;
+    }
+
+    // ---------------------------------------------------------------------------------------------------
+
+    // %xx escapes are decoded as UTF-8, %{hex} as single chars, see PercentDecoder
+    static public String recode_URI_UTF8(CallContext context, String string) {
+        return recode_URI_UTF8(context, string, (RecodingTargetContext) null);
+    }
+
+    static public StringBuilder recode_URI_UTF8(CallContext context, CharSequence string, StringBuilder output) {
+        return recode_URI_UTF8(context, string, output, (RecodingTargetContext) null);
+    }
+
+    static public String recode_URI_UTF8(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        if (string.indexOf('%') == -1) { return string; }
+        return recode_URI_UTF8(context, string, null, recoding_target_context).toString();
+    }
+
+    static public StringBuilder recode_URI_UTF8(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        return decodePercent(context, string, output, false);
+    }
+
+    static protected StringBuilder decodePercent(CallContext context, CharSequence string, StringBuilder output, boolean form) {
+        int len = string.length();
+        output = prepareOutput(context, output, len);
+
+        PercentDecoder decoder = new PercentDecoder(context, prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null), form);
+        decoder.append(string, 0, len);
+        decoder.finish(context);
+
+        return output;
+    }
+
+    // ---------------------------------------------------------------------------------------------------
+
+    // chars are escaped as UTF-8 byte sequences, see PercentEncoder
+    static public String recode_UTF8_URI(CallContext context, String string) {
+        return recode_UTF8_URI(context, string, (RecodingTargetContext) null);
+    }
+
+    static public StringBuilder recode_UTF8_URI(CallContext context, CharSequence string, StringBuilder output) {
+        return recode_UTF8_URI(context, string, output, (RecodingTargetContext) null);
+    }
+
+    static public String recode_UTF8_URI(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        return PercentEncoder.encode(context, string, false);
+    }
+
+    static public StringBuilder recode_UTF8_URI(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        int len = string.length();
+        return PercentEncoder.encode(context, string, 0, len, prepareOutput(context, output, len+8), false);
+    }
+
+    final static public String[] hex =
+    {
+        "00", "01", "02", "03", "04", "05", "06", "07",
+        "08", "09", "0A", "0B", "0C", "0D", "0E", "0F",
+        "10", "11", "12", "13", "14", "15", "16", "17",
+        "18", "19", "1A", "1B", "1C", "1D", "1E", "1F",
+        "20", "21", "22", "23", "24", "25", "26", "27",
+        "28", "29", "2A", "2B", "2C", "2D", "2E", "2F",
+        "30", "31", "32", "33", "34", "35", "36", "37",
+        "38", "39", "3A", "3B", "3C", "3D", "3E", "3F",
         "40", "41", "42", "43", "44", "45", "46", "47",
         "48", "49", "4A", "4B", "4C", "4D", "4E", "4F",
         "50", "51", "52", "53", "54", "55", "56", "57",
@@ -1061,12 +1626,7 @@ public enum Encoding {
 
     static public StringBuilder recode_BASE64_UTF8(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
         int len = string.length();
-        output = prepareOutput(context, output, len);
-
-        Base64.Decoder decoder = java.util.Base64.getDecoder();
-        output.append(new String(decoder.decode(string.toString())));
-
-        return output;
+        return Base64Decoder.decode(context, string, prepareOutput(context, output, (len / 4) * 3));
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1084,39 +1644,35 @@ public enum Encoding {
     }
 
     static public StringBuilder recode_UTF8_BASE64(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
-        int len = string.length();
-        output = prepareOutput(context, output, len);
-
-        Base64.Encoder encoder = java.util.Base64.getEncoder();
-        output.append(encoder.encodeToString(string.toString().getBytes()));
+        return recode_UTF8_BASE64(context, string, output, recoding_target_context, 0);
+    }
 
-        return output;
+    /**
+       Flags select the variant, see Base64Encoder.
+     */
+    static public StringBuilder recode_UTF8_BASE64(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context, int flags) {
+        int len = string.length();
+        return Base64Encoder.encode(context, string, prepareOutput(context, output, ((len + 2) / 3) * 4 + 8), flags);
     }
 
     // ---------------------------------------------------------------------------------------------------
 
-    // not really for UTF8 (only ASCII), but should
+    // _xx escapes are decoded as UTF-8, see PercentDecoder
     static public String recode_VSA_UTF8(CallContext context, String string) {
         return recode_VSA_UTF8(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_VSA_UTF8(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        Matcher m = vsa_escape.matcher(string);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            char c1 = m.group(1).toUpperCase().charAt(0);
-            char c2 = m.group(1).toUpperCase().charAt(1);
-            char c = (char) ((c1 - (c1 > 64 ? 55 : 48)) * 16 + (c2 - (c2 > 64 ? 55 : 48)));
-            m.appendReplacement(sb, "");
-            sb.append(c);
-        }
-        m.appendTail(sb);
-        return sb.toString();
+        if (string.indexOf('_') == -1) { return string; }
+        StringBuilder output = new StringBuilder(string.length());
+        PercentDecoder decoder = new PercentDecoder(context, prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null), '_', false, false);
+        decoder.append(string, 0, string.length());
+        decoder.finish(context);
+        return output.toString();
     }
 
     // ---------------------------------------------------------------------------------------------------
 
-    // not really for UTF8 (only ASCII), but should
     static public String recode_VSAU_UTF8(CallContext context, String string) {
         return recode_VSAU_UTF8(context, string, (RecodingTargetContext) null);
     }
@@ -1145,24 +1701,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_JSSINGLE(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string == null) { return null; }
-        CharacterIterator iter = new StringCharacterIterator(string);
-        StringBuffer sb = new StringBuffer();
-        for (char c = iter.first(); c != CharacterIterator.DONE; c = iter.next()) {
-            if (c == '\b')              { sb.append("\\b"); continue; } // backspace
-            if (c == '\f')              { sb.append("\\f"); continue; } // form feed
-            if (c == '\n')              { sb.append("\\n"); continue; } // line feed
-            if (c == '\r')              { sb.append("\\r"); continue; } // carriage return
-            if (c == '\t')              { sb.append("\\t"); continue; } // horizontal tab
-            if (c == '\u000B')          { sb.append("\\v"); continue; } // vertical tab
-            if (c == '\'')              { sb.append("\\\'"); continue; }
-            if (c == '\\')              { sb.append("\\\\"); continue; }
-            if (0x00 <= c && c <= 0x1F) { sb.append("\\u00" + hex[c]); continue; }
-            if (0x20 <= c && c <= 0x7F) { sb.append(c); continue; }
-            if (0x80 <= c && c <= 0xFF) { sb.append("\\u00" + hex[c]); continue; }
-            sb.append("\\u" + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF]);
-        }
-        return sb.toString();
+        return JSSINGLE_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1175,24 +1714,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_JSDOUBLE(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string == null) { return null; }
-        CharacterIterator iter = new StringCharacterIterator(string);
-        StringBuffer sb = new StringBuffer();
-        for (char c = iter.first(); c != CharacterIterator.DONE; c = iter.next()) {
-            if (c == '\b')              { sb.append("\\b"); continue; } // backspace
-            if (c == '\f')              { sb.append("\\f"); continue; } // form feed
-            if (c == '\n')              { sb.append("\\n"); continue; } // line feed
-            if (c == '\r')              { sb.append("\\r"); continue; } // carriage return
-            if (c == '\t')              { sb.append("\\t"); continue; } // horizontal tab
-            if (c == '\u000B')          { sb.append("\\v"); continue; } // vertical tab
-            if (c == '"')               { sb.append("\\\""); continue; }
-            if (c == '\\')              { sb.append("\\\\"); continue; }
-            if (0x00 <= c && c <= 0x1F) { sb.append("\\u00" + hex[c]); continue; }
-            if (0x20 <= c && c <= 0x7F) { sb.append(c); continue; }
-            if (0x80 <= c && c <= 0xFF) { sb.append("\\u00" + hex[c]); continue; }
-            sb.append("\\u" + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF]);
-        }
-        return sb.toString();
+        return JSDOUBLE_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1214,8 +1736,8 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_JAVA(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        StringBuilder sb = recode_UTF8_JAVA(context, string, null, recoding_target_context);
-        return sb == null ? null : sb.toString();
+        string = JAVA_ESCAPES.escape(string);
+        return recoding_target_context == null || string == null ? string : recoding_target_context.processOutput(context, string);
     }
 
     static public StringBuilder recode_UTF8_JAVA(CallContext context, CharSequence sequence, Appendable appendable, RecodingTargetContext recoding_target_context) {
@@ -1230,32 +1752,81 @@ public enum Encoding {
         if (string == null) { return null; }
 
         Output output = prepareOutput(context, appendable, string, recoding_target_context);
+        RecodingTransducer transducer = new EscapingTransducer(context, output, JAVA_ESCAPES);
+
+        transduce(context, string, transducer);
 
-        int i;
-        while ((i = string.read(context)) != -1) {
-            char c = (char) i;
-            if (c == '\n')              { output.append(context, "\\n"); continue; }
-            if (c == '\r')              { output.append(context, "\\r"); continue; }
-            if (c == '\t')              { output.append(context, "\\t"); continue; }
-            if (c == '"')               { output.append(context, "\\\""); continue; }
-            if (c == '\\')              { output.append(context, "\\\\"); continue; }
-            if (0x00 <= c && c <= 0x1F) { output.append(context, "\\u00" + hex[c]); continue; }
-            if (0x20 <= c && c <= 0x7F) { output.append(context, c); continue; }
-            if (0x80 <= c && c <= 0xFF) { output.append(context, "\\u00" + hex[c]); continue; }
-            output.append(context, "\\u" + hex[(c & 0xFF00) >> 8] + hex[c & 0xFF]);
-        }
-        
         return output.to_return;
     }
 
+    static protected class EscapingTransducer extends RecodingTransducer {
+        protected EscapeTable escapes;
+
+        public EscapingTransducer(CallContext context, Output output, EscapeTable escapes) {
+            super(context, output);
+            this.escapes = escapes;
+        }
+
+        public void put(CallContext context, char c) {
+            this.escapes.escape(context, c, this.output);
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            this.escapes.escape(context, buffer, offset, length, this.output);
+        }
+    }
+
+
     // ---------------------------------------------------------------------------------------------------
 
+    static protected final String[] JAVA_KEYWORDS = {
+        "import", "interface", "class", "package", "private", "default", "protected", "public", "final", "static", "return"
+    };
+
+    static protected final java.util.Set<String> JAVA_KEYWORD_SET    = new java.util.HashSet<String>();
+    static protected final java.util.Set<String> JAVA_MC_KEYWORD_SET = new java.util.HashSet<String>();
+
+    static {
+        for (String keyword : JAVA_KEYWORDS) {
+            JAVA_KEYWORD_SET.add(keyword);
+            JAVA_MC_KEYWORD_SET.add(Character.toUpperCase(keyword.charAt(0)) + keyword.substring(1));
+        }
+    }
+
+    // equivalent of matching "prefix.*", i.e. the rest must not contain line terminators
+    static protected boolean isPrefixed(String string, String prefix) {
+        if (string.startsWith(prefix) == false) { return false; }
+        return isSingleLine(string, prefix.length());
+    }
+
+    // equivalent of matching "(?i:prefix.*)" for a lower case prefix,
+    // i.e. ASCII letters only are compared case insensitively
+    static protected boolean isPrefixedIgnoreCase(String string, String prefix) {
+        int plen = prefix.length();
+        if (string.length() < plen) { return false; }
+        for (int i=0; i<plen; i++) {
+            char c = string.charAt(i);
+            if (c >= 'A' && c <= 'Z') { c = (char) (c - 'A' + 'a'); }
+            if (c != prefix.charAt(i)) { return false; }
+        }
+        return isSingleLine(string, plen);
+    }
+
+    static protected boolean isSingleLine(String string, int start) {
+        int len = string.length();
+        for (int i=start; i<len; i++) {
+            char c = string.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') { return false; }
+        }
+        return true;
+    }
+
     static public String recode_UTF8_JAVAID(CallContext context, String string) {
         return recode_UTF8_JAVAID(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UTF8_JAVAID(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string.matches("^(?:(?:import)|(?:interface)|(?:class)|(?:package)|(?:private)|(?:default)|(?:protected)|(?:public)|(?:final)|(?:static)|(?:return)|(?:j_.*))$")) {
+        if (JAVA_KEYWORD_SET.contains(string) || isPrefixed(string, "j_")) {
             return "j_" + string;
         } else {
             return string;
@@ -1279,7 +1850,7 @@ public enum Encoding {
     }
 
     static public String recode_LC_JAVAID(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string.matches("^(?:(?:import)|(?:interface)|(?:class)|(?:package)|(?:private)|(?:default)|(?:protected)|(?:public)|(?:final)|(?:static)|(?:return)|(?:j.*))$")) {
+        if (JAVA_KEYWORD_SET.contains(string) || isPrefixed(string, "j")) {
             return "j" + string;
         } else {
             return string;
@@ -1293,15 +1864,97 @@ public enum Encoding {
     }
 
     static public String recode_MC_JAVAID(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string.matches("^(?:(?:Import)|(?:Interface)|(?:Class)|(?:Package)|(?:Private)|(?:Default)|(?:Protected)|(?:Public)|(?:Final)|(?:Static)|(?:Return)|(?:J.*))$")) {
+        if (JAVA_MC_KEYWORD_SET.contains(string) || isPrefixed(string, "J")) {
             return "J" + string;
         } else {
             return string;
         }
     }
 
+    /**
+       Streaming variant of the identifier recodings above, which prefix
+       keywords and identifiers that already start with the prefix.
+
+       The input is held back as long as it still may turn out to be a
+       keyword or prefixed; once it is longer than any keyword and does
+       not start with the prefix (or a line terminator follows the
+       prefix), it is passed on unchanged. Input which starts with the
+       prefix is thus held back up to the first line terminator.
+     */
+    static protected class KeywordTransducer extends RecodingTransducer {
+        protected java.util.Set<String> keywords;
+        protected String                prefix;
+        protected int                   maximum;
+        protected StringBuilder         pending;
+        protected boolean               multiline;
+        protected boolean               passing;
+
+        public KeywordTransducer (CallContext context, Output output, java.util.Set<String> keywords, String prefix) {
+            super(context, output);
+            this.keywords = keywords;
+            this.prefix   = prefix;
+            for (String keyword : keywords) {
+                if (keyword.length() > this.maximum) { this.maximum = keyword.length(); }
+            }
+            this.pending  = new StringBuilder();
+        }
+
+        public void put(CallContext context, char c) {
+            if (this.passing) {
+                this.output.append(context, c);
+                return;
+            }
+            this.pending.append(c);
+            if (this.isUndecided() == false) {
+                this.output.append(context, this.pending);
+                this.pending.setLength(0);
+                this.passing = true;
+            }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end = offset + length;
+            while (offset < end && this.passing == false) {
+                this.put(context, buffer[offset++]);
+            }
+            if (offset < end) {
+                this.output.append(context, buffer, offset, end - offset);
+            }
+        }
+
+        protected boolean isUndecided() {
+            int len  = this.pending.length();
+            int plen = this.prefix.length();
+            char c = this.pending.charAt(len - 1);
+            if (len > plen && (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')) {
+                this.multiline = true;
+            }
+            if (len <= this.maximum) { return true; }
+            for (int i=0; i<plen && i<len; i++) {
+                if (this.pending.charAt(i) != this.prefix.charAt(i)) { return false; }
+            }
+            return this.multiline == false;
+        }
+
+        public void finish(CallContext context) {
+            if (this.passing == false) {
+                String string = this.pending.toString();
+                if (this.keywords.contains(string) || isPrefixed(string, this.prefix)) {
+                    this.output.append(context, this.prefix);
+                }
+                this.output.append(context, string);
+                this.pending.setLength(0);
+            }
+            this.multiline = false;
+            this.passing   = false;
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------
 
+    // reserved key words of PostgreSQL (including those which may be
+    // function or type names), plus some which are used by the mapper
+    // https://www.postgresql.org/docs/10/static/sql-keywords-appendix.html
     static protected String[] SQL_KEYWORDS = {
         "select",
         "update",
@@ -1317,21 +1970,56 @@ public enum Encoding {
         "begin",
         "end",
         "set",
-        "unique"
+        "unique",
+        "all", "analyse", "analyze", "and", "any", "array", "as", "asc", "asymmetric",
+        "authorization", "binary", "both", "case", "cast", "check", "collate", "collation",
+        "column", "concurrently", "create", "cross", "current_catalog", "current_date",
+        "current_role", "current_schema", "current_time", "current_timestamp", "current_user",
+        "default", "deferrable", "desc", "distinct", "do", "else", "except", "false", "fetch",
+        "for", "foreign", "freeze", "full", "grant", "group", "having", "ilike", "in",
+        "initially", "inner", "intersect", "into", "is", "isnull", "join", "lateral",
+        "leading", "left", "like", "limit", "localtime", "localtimestamp", "natural", "not",
+        "notnull", "null", "offset", "on", "only", "or", "order", "outer", "overlaps",
+        "placing", "primary", "references", "returning", "right", "session_user", "similar",
+        "some", "symmetric", "tablesample", "then", "trailing", "true", "union", "using",
+        "variadic", "verbose", "when", "where", "window", "with"
     };
 
-    static protected String UTF8_JAVASQLID_PATTERN;
-    
+    static protected final java.util.Set<String> SQL_KEYWORD_SET     = new java.util.HashSet<String>();
+    static protected final java.util.Set<String> SQL_UC_KEYWORD_SET  = new java.util.HashSet<String>();
+
+    static {
+        for (String keyword : SQL_KEYWORDS) {
+            SQL_KEYWORD_SET.add(keyword);
+            SQL_UC_KEYWORD_SET.add(keyword.toUpperCase(java.util.Locale.ROOT));
+        }
+    }
+
+    // lower case variant for case insensitive lookups, ASCII only, like (?i:...);
+    // returns null if there are other chars, which can't be keywords anyway,
+    // but may still carry a prefix
+    static protected String toASCIILowerCase(String string) {
+        int len = string.length();
+        char[] chars = null;
+        for (int i=0; i<len; i++) {
+            char c = string.charAt(i);
+            if (c >= 128) { return null; }
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) { chars = string.toCharArray(); }
+                chars[i] = (char) (c - 'A' + 'a');
+            }
+        }
+        return chars == null ? string : new String(chars);
+    }
+
     static public String recode_UTF8_JAVASQLID(CallContext context, String string) {
         return recode_UTF8_JAVASQLID(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UTF8_JAVASQLID(CallContext context, String string, RecodingTargetContext recoding_target_context) {
         string = recode_UTF8_JAVAID(context, string, recoding_target_context);
-        if (UTF8_JAVASQLID_PATTERN == null) {
-            UTF8_JAVASQLID_PATTERN = StringUtilities.join(context, SQL_KEYWORDS, "^(?:", "|", "|(?i:s_.*))$", "(?i:", ")", false, true, null, null);
-        }
-        if (string.matches(UTF8_JAVASQLID_PATTERN)) {
+        String lower = toASCIILowerCase(string);
+        if ((lower != null && SQL_KEYWORD_SET.contains(lower)) || isPrefixedIgnoreCase(string, "s_")) {
             // well, "class" is not exactly a sql problem, but a java one; if
             // the attribute is called "class" in the db, the corresponding
             // getter will be named "getClass()" by the mapper and this
@@ -1380,22 +2068,17 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_SQL(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return string.replace("'", "''");
+        return SQL_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
 
-    static protected String UCU_SQLID_PATTERN;
-
     static public String recode_UCU_SQLID(CallContext context, String string) {
         return recode_UCU_SQLID(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UCU_SQLID(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (UCU_SQLID_PATTERN == null) {
-            UCU_SQLID_PATTERN = StringUtilities.join(context, SQL_KEYWORDS, "^(?:", "|", "|(?:X_.*))$", "(?:", ")", false, true, null, null, (ctx, keyword) -> { return keyword.toUpperCase(); });
-        }
-        if (string.matches(UCU_SQLID_PATTERN)) {
+        if (SQL_UC_KEYWORD_SET.contains(string) || isPrefixed(string, "X_")) {
             return "X_" + string;
         } else {
             return string;
@@ -1425,8 +2108,79 @@ public enum Encoding {
         return recode_LCU_UCU(context, string, (RecodingTargetContext) null);
     }
 
-    static public String recode_LCU_UCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return string.toUpperCase();
+    static public String recode_LCU_UCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        return string.toUpperCase();
+    }
+
+    /**
+       Streaming variant of String.toLowerCase and toUpperCase, which
+       depend on the surrounding chars in some cases (like final sigma,
+       which looks at the whole word, or the locale specific rules for
+       dotted letters). The input is therefore converted in segments,
+       which end after a char that none of these rules looks beyond:
+       for upper case any ASCII char but letters, for lower case blanks
+       and line terminators only, since e.g. '_' and digits belong to the
+       word. Segments are held back until such a char is seen; the last
+       char of the previous segment is converted along with the next
+       one, since final sigma also depends on whether there is any text
+       before the word.
+     */
+    static protected class CaseTransducer extends RecodingTransducer {
+        protected boolean       upper;
+        protected StringBuilder pending;
+        protected boolean       continued;
+
+        public CaseTransducer (CallContext context, Output output, boolean upper) {
+            super(context, output);
+            this.upper   = upper;
+            this.pending = new StringBuilder();
+        }
+
+        protected boolean isSegmentEnd(char c) {
+            if (this.upper) {
+                return c < 128 && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z');
+            }
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        public void put(CallContext context, char c) {
+            this.pending.append(c);
+            if (this.isSegmentEnd(c)) { this.flush(context); }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end = offset + length;
+            int cut = end;
+            while (cut > offset && this.isSegmentEnd(buffer[cut - 1]) == false) { cut--; }
+            if (cut > offset) {
+                this.pending.append(buffer, offset, cut - offset);
+                this.flush(context);
+            }
+            this.pending.append(buffer, cut, end - cut);
+        }
+
+        protected void flush(CallContext context) {
+            StringBuilder pending = this.pending;
+            if (pending.length() == (this.continued ? 1 : 0)) { return; }
+            String segment   = pending.toString();
+            String converted = this.upper ? segment.toUpperCase() : segment.toLowerCase();
+            // the last char of the previous segment is converted to itself
+            this.write(context, this.continued ? converted.substring(1) : converted);
+            char last = pending.charAt(pending.length() - 1);
+            pending.setLength(0);
+            pending.append(last);
+            this.continued = true;
+        }
+
+        protected void write(CallContext context, String converted) {
+            this.output.append(context, converted);
+        }
+
+        public void finish(CallContext context) {
+            this.flush(context);
+            this.pending.setLength(0);
+            this.continued = false;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1436,14 +2190,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_CSV(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string == null) { return null; }
-        CharacterIterator iter = new StringCharacterIterator(string);
-        StringBuffer sb = new StringBuffer();
-        for (char c = iter.first(); c != CharacterIterator.DONE; c = iter.next()) {
-            if (c == '"')               { sb.append("\"\""); continue; }
-            else                        { sb.append(c); continue; }
-        }
-        return sb.toString();
+        return CSV_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1453,15 +2200,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_QUOTEDD(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string == null) { return null; }
-        CharacterIterator iter = new StringCharacterIterator(string);
-        StringBuffer sb = new StringBuffer();
-        for (char c = iter.first(); c != CharacterIterator.DONE; c = iter.next()) {
-            if (c == '"')               { sb.append("\\\""); continue; }
-            if (c == '\\')              { sb.append("\\\\"); continue; }
-            else                        { sb.append(c); continue; }
-        }
-        return sb.toString();
+        return QUOTEDD_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1471,73 +2210,29 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_QUOTEDS(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        if (string == null) { return null; }
-        CharacterIterator iter = new StringCharacterIterator(string);
-        StringBuffer sb = new StringBuffer();
-        for (char c = iter.first(); c != CharacterIterator.DONE; c = iter.next()) {
-            if (c == '\'')              { sb.append("\\'"); continue; }
-            if (c == '\\')              { sb.append("\\\\"); continue; }
-            else                        { sb.append(c); continue; }
-        }
-        return sb.toString();
+        return QUOTEDS_ESCAPES.escape(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
 
-    // not really for UTF8 (only ASCII), but should
+    // chars are escaped as UTF-8 bytes, see VSAEncoder
     static public String recode_UTF8_VSA(CallContext context, String string) {
         return recode_UTF8_VSA(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UTF8_VSA(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        byte[] bytes;
-        try {
-            bytes = string.getBytes("UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            CustomaryContext.create((Context)context).throwLimitation(context, "System (VM) does not support UTF-8 encoding");
-            throw (ExceptionLimitation) null;
-        }
-        StringBuffer sb = new StringBuffer();
-        boolean first = true;
-        for (int b : bytes) {
-            if (b < 0) { b += 256; }
-            int code = (b > 0x007f ? 5 : URICharCode[b]);
-            if (first) {
-                if (b >= '0' && b <= '9') { code = -1; }
-                first = false;
-            }
-            sb.append(code == 0 ? ((char)b) : ("_" + hex[b]));
-        }
-        return sb.toString();
+        return VSAEncoder.encode(context, string, VSAEncoder.VSA);
     }
 
     // ---------------------------------------------------------------------------------------------------
 
-    // not really for UTF8 (only ASCII), but should
+    // chars are escaped as UTF-8 bytes, see VSAEncoder
     static public String recode_UTF8_VSAU(CallContext context, String string) {
         return recode_UTF8_VSAU(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UTF8_VSAU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        byte[] bytes;
-        try {
-            bytes = string.getBytes("UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            CustomaryContext.create((Context)context).throwLimitation(context, "System (VM) does not support UTF-8 encoding");
-            throw (ExceptionLimitation) null;
-        }
-        StringBuffer sb = new StringBuffer();
-        boolean first = true;
-        for (int b : bytes) {
-            if (b < 0) { b += 256; }
-            int code = (b > 0x007F ? 5 : b == 0x005F /* _ */ ? 0 : URICharCode[b]);
-            if (first) {
-                if (b >= '0' && b <= '9') { code = -1; }
-                first = false;
-            }
-            sb.append(code == 0 ? ((char)b) : ("_" + hex[b]));
-        }
-        return sb.toString();
+        return VSAEncoder.encode(context, string, VSAEncoder.VSAU);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1550,6 +2245,35 @@ public enum Encoding {
         return string.replaceAll("[ @_./+-]+", "_").replaceAll("[^A-Za-z0-9_]", "").replaceAll("__+", "_");
     }
 
+    /**
+       Single pass variant of the expressions above: alphanumerics are
+       kept, separators become a single '_' unless the last char written
+       was one, everything else is dropped.
+     */
+    static protected class SATransducer extends RecodingTransducer {
+        protected boolean underscore;
+
+        public SATransducer (CallContext context, Output output) {
+            super(context, output);
+        }
+
+        public void put(CallContext context, char c) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                this.output.append(context, c);
+                this.underscore = false;
+            } else if (c == ' ' || c == '@' || c == '_' || c == '.' || c == '/' || c == '+' || c == '-') {
+                if (this.underscore == false) {
+                    this.output.append(context, '_');
+                    this.underscore = true;
+                }
+            }
+        }
+
+        public void finish(CallContext context) {
+            this.underscore = false;
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------
 
     final static public int [] FileNameCode = {
@@ -1571,26 +2295,13 @@ public enum Encoding {
         1 /* x 78 */, 1 /* y 79 */, 1 /* z 7A */, 1 /* 0 7B */, 1 /* 0 7C */, 1 /* 0 7D */, 1 /* 0 7E */, 0 /*   7F */
     };
 
-    // not really for UTF8 (only ASCII), but should
+    // chars are escaped as UTF-8 bytes, see VSAEncoder
     static public String recode_UTF8_FILENAME(CallContext context, String string) {
         return recode_UTF8_FILENAME(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_UTF8_FILENAME(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        byte[] bytes;
-        try {
-            bytes = string.getBytes("UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            CustomaryContext.create((Context)context).throwLimitation(context, "System (VM) does not support UTF-8 encoding");
-            throw (ExceptionLimitation) null;
-        }
-        StringBuffer sb = new StringBuffer();
-        for (int b : bytes) {
-            if (b < 0) { b += 256; }
-            int code = (b > 0x007f ? 0 : FileNameCode[b]);
-            sb.append(code == 1 ? ((char)b) : "_");
-        }
-        return sb.toString();
+        return VSAEncoder.encode(context, string, VSAEncoder.FILENAME);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1603,6 +2314,34 @@ public enum Encoding {
         return string.toLowerCase().replaceAll("_", "-").replaceAll("[^a-z0-9-]", "");
     }
 
+    /**
+       Streaming variant of the above; since only ASCII chars are kept,
+       segments may end after any ASCII char but letters, see
+       CaseTransducer.
+     */
+    static protected class SubdomainTransducer extends CaseTransducer {
+
+        public SubdomainTransducer (CallContext context, Output output) {
+            super(context, output, false);
+        }
+
+        protected boolean isSegmentEnd(char c) {
+            return c < 128 && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z');
+        }
+
+        protected void write(CallContext context, String converted) {
+            int len = converted.length();
+            for (int i=0; i<len; i++) {
+                char c = converted.charAt(i);
+                if (c == '_') {
+                    this.output.append(context, '-');
+                } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-') {
+                    this.output.append(context, c);
+                }
+            }
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_UTF8_SHA1(CallContext context, String string) {
@@ -1610,6 +2349,28 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_SHA1(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        MessageDigest md = sha1_digest.get();
+        if (md == null) {
+            sha1_digest.set(md = createSHA1Digest(context));
+        }
+        md.reset();
+        return toHex(md.digest(string.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+    }
+
+    // per thread, since MessageDigest.getInstance is a provider lookup each time
+    static protected ThreadLocal<MessageDigest> sha1_digest = new ThreadLocal<MessageDigest>();
+
+    // never updated itself, only cloned; volatile for safe publication
+    static protected volatile MessageDigest sha1_prototype;
+
+    static protected MessageDigest createSHA1Digest(CallContext context) {
+        MessageDigest prototype = sha1_prototype;
+        if (prototype != null) {
+            try {
+                return (MessageDigest) prototype.clone();
+            } catch (CloneNotSupportedException cnse) {
+            }
+        }
         MessageDigest md;
         try {
             md = MessageDigest.getInstance("SHA1");
@@ -1617,13 +2378,16 @@ public enum Encoding {
             CustomaryContext.create(Context.create(context)).throwConfigurationError(context, "MessageDigest algorithm SHA1 not available");
             throw (ExceptionConfigurationError) null; // compiler insists
         }
-
-        byte[] bytes = null;
-        try {
-            bytes = md.digest(string.getBytes("UTF-8"));
-        } catch (UnsupportedEncodingException uee) {
+        if (prototype == null) {
+            try {
+                sha1_prototype = (MessageDigest) md.clone();
+            } catch (CloneNotSupportedException cnse) {
+            }
         }
+        return md;
+    }
 
+    static protected String toHex(byte[] bytes) {
         int i, n;
         char[] chars = new char[bytes.length*2];
         for (i = bytes.length - 1; i >= 0; i--) {
@@ -1631,10 +2395,74 @@ public enum Encoding {
             chars[i*2]   = HEX_CHARS[n/16];
             chars[i*2+1] = HEX_CHARS[n%16];
         }
-        
         return new String(chars);
     }
 
+    /**
+       Feeds its input as UTF-8 into a SHA1 digest, via a small byte
+       buffer, and writes the hex digest on finish. Each transducer has
+       a digest of its own, since several of them may be active in one
+       thread, e.g. in a pipeline.
+     */
+    static protected class SHA1Transducer extends RecodingTransducer {
+        protected MessageDigest md;
+        protected byte[]        bytes;
+        protected int           count;
+        protected char          high;
+
+        public SHA1Transducer(CallContext context, Output output) {
+            super(context, output);
+            this.md    = createSHA1Digest(context);
+            this.bytes = new byte[BLOCK_SIZE];
+        }
+
+        public void put(CallContext context, char c) {
+            if (this.count > this.bytes.length - 4) {
+                this.md.update(this.bytes, 0, this.count);
+                this.count = 0;
+            }
+            if (this.high != 0) {
+                char high = this.high;
+                this.high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    this.bytes[this.count++] = (byte) (0xF0 | (cp >> 18));
+                    this.bytes[this.count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    this.bytes[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    this.bytes[this.count++] = (byte) (0x80 | (cp & 0x3F));
+                    return;
+                }
+                this.bytes[this.count++] = (byte) '?';
+                this.put(context, c);
+                return;
+            }
+            if (c < 0x80) {
+                this.bytes[this.count++] = (byte) c;
+            } else if (c < 0x800) {
+                this.bytes[this.count++] = (byte) (0xC0 | (c >> 6));
+                this.bytes[this.count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                this.high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                this.bytes[this.count++] = (byte) '?';
+            } else {
+                this.bytes[this.count++] = (byte) (0xE0 | (c >> 12));
+                this.bytes[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.bytes[this.count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        public void finish(CallContext context) {
+            if (this.high != 0) {
+                this.high = 0;
+                this.bytes[this.count++] = (byte) '?';
+            }
+            this.md.update(this.bytes, 0, this.count);
+            this.count = 0;
+            this.output.append(context, toHex(this.md.digest()));
+        }
+    }
+
     private static final char HEX_CHARS[] = new char[] {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
 
     // ---------------------------------------------------------------------------------------------------
@@ -1649,22 +2477,13 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_XML(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return recode_UTF8_XML(context, string, null, recoding_target_context).toString();
+        return XML_ESCAPES.escape(string);
     }
 
     static public StringBuilder recode_UTF8_XML(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
         int len = string.length();
         output = prepareOutput(context, output, len+8);
-
-        char c;
-        for (int i = 0; i < len; i++) {
-            c = string.charAt(i);
-            if (c == '<') { output.append("&lt;"); continue; }
-            if (c == '>') { output.append("&gt;"); continue; }
-            if (c == '&') { output.append("&amp;"); continue; }
-            output.append(c);
-        }
-        return output;
+        return XML_ESCAPES.escape(string, 0, len, output);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1686,8 +2505,8 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_XMLATT(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        StringBuilder sb = recode_UTF8_XMLATT(context, string, null, recoding_target_context);
-        return sb == null ? null : sb.toString();
+        string = XMLATT_ESCAPES.escape(string);
+        return recoding_target_context == null || string == null ? string : recoding_target_context.processOutput(context, string);
     }
 
     static public StringBuilder recode_UTF8_XMLATT(CallContext context, CharSequence sequence, Appendable appendable, RecodingTargetContext recoding_target_context) {
@@ -1702,22 +2521,14 @@ public enum Encoding {
         if (string == null) { return null; }
 
         Output output = prepareOutput(context, appendable, string, recoding_target_context);
+        RecodingTransducer transducer = new EscapingTransducer(context, output, XMLATT_ESCAPES);
 
-        int i;
-        while ((i = string.read(context)) != -1) {
-            char c = (char) i;
-            if (c == '<')  { output.append(context, "&lt;"); continue; }
-            if (c == '>')  { output.append(context, "&gt;"); continue; }
-            if (c == '&')  { output.append(context, "&amp;"); continue; }
-            if (c == '"')  { output.append(context, "&quot;"); continue; }
-            if (c == '\'') { output.append(context, "&apos;"); continue; }
-            if (c == '\n') { output.append(context, "&#13;&#10;"); continue; }
-            output.append(context, c);
-        }
+        transduce(context, string, transducer);
 
         return output.to_return;
     }
 
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_XMLITEXT_UTF8(CallContext context, String string) {
@@ -1753,8 +2564,21 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_JSON(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        StringBuilder sb = recode_UTF8_JSON(context, string, null, recoding_target_context);
-        return sb == null ? null : sb.toString();
+        if (string == null) { return null; }
+
+        int len   = string.length();
+        int first = JSON_ESCAPES.scan(string, 0, len);
+        if (first == len) {
+            return recoding_target_context == null ? string : recoding_target_context.processOutput(context, string);
+        }
+
+        StringBuilder sb = new StringBuilder(len + 16);
+        sb.append(string, 0, first);
+        JSONTransducer transducer = new JSONTransducer(context, prepareOutput(context, sb, (CharSource) null, recoding_target_context));
+        if (first > 0) { transducer.previous = string.charAt(first - 1); }
+        transducer.append(string, first, len);
+        transducer.finish(context);
+        return sb.toString();
     }
 
     static public StringBuilder recode_UTF8_JSON(CallContext context, CharSequence sequence, Appendable appendable, RecodingTargetContext recoding_target_context) {
@@ -1769,56 +2593,51 @@ public enum Encoding {
         if (string == null) { return null; }
 
         Output output = prepareOutput(context, appendable, string, recoding_target_context);
+        RecodingTransducer transducer = new JSONTransducer(context, output);
 
-        char         c = 0;
-        int          i;
-        char         b;
-        String       t;
-        while ((i = string.read(context)) != -1) {
-            b = c;
-            c = (char) i;
+        transduce(context, string, transducer);
 
-            switch (c) {
-                case '\\':
-                case '"':
-                    output.append(context, '\\');
-                    output.append(context, c);
-                    break;
-                case '/':
-                    if (b == '<') {
-                        output.append(context, '\\');
-                    }
-                    output.append(context, c);
-                    break;
-                case '\b':
-                    output.append(context, "\\b");
-                    break;
-                case '\t':
-                    output.append(context, "\\t");
-                    break;
-                case '\n':
-                    output.append(context, "\\n");
-                    break;
-                case '\f':
-                    output.append(context, "\\f");
-                    break;
-                case '\r':
-                    output.append(context, "\\r");
-                    break;
-                default:
-                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
-                                   (c >= '\u2000' && c < '\u2100')) {
-                        t = "000" + Integer.toHexString(c);
-                        output.append(context, "\\u" + t.substring(t.length() - 4));
-                    } else {
-                        output.append(context, c);
-                    }
+        return output.to_return;
+    }
+
+    static protected class JSONTransducer extends EscapingTransducer {
+        protected char previous;
+
+        public JSONTransducer(CallContext context, Output output) { super(context, output, JSON_ESCAPES); }
+
+        public void put(CallContext context, char c) {
+            if (c == '/') {
+                if (this.previous == '<') {
+                    this.output.append(context, '\\');
+                }
+                this.output.append(context, c);
+            } else {
+                this.escapes.escape(context, c, this.output);
             }
+            this.previous = c;
         }
 
-        return output.to_return;
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end   = offset + length;
+            int start = offset;
+            while (start < end) {
+                int i = this.escapes.scan(buffer, start, end);
+                if (i > start) {
+                    this.output.append(context, buffer, start, i - start);
+                    this.previous = buffer[i - 1];
+                }
+                if (i == end) { break; }
+                this.put(context, buffer[i]);
+                start = i + 1;
+            }
+        }
+
+        public void finish(CallContext context) {
+            this.previous = 0;
+        }
     }
 
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_UTF8_TEX(CallContext context, String string) {
@@ -1854,30 +2673,43 @@ public enum Encoding {
         if (string == null) { return null; }
 
         Output output = prepareOutput(context, appendable, string, recoding_target_context);
+        RecodingTransducer transducer = new TeXTransducer(context, output);
+
+        transduce(context, string, transducer);
 
-        char         c = 0;
-        int          i;
-        boolean      superscript = false;
-        while ((i = string.read(context)) != -1) {
+        return output.to_return;
+    }
+
+    static protected class TeXTransducer extends RecodingTransducer {
+        protected boolean superscript;
+        protected boolean protected_region;
+
+        public TeXTransducer(CallContext context, Output output) { super(context, output); }
+
+        public void put(CallContext context, char c) {
+            Output output = this.output;
             // ⟦ protected region ⟧
-            if (i == 0x27E6) {
-                while ((i = string.read(context)) != -1) {
-                    if (i == 0X27E7) { break; }
-                    c = (char) i;
+            if (this.protected_region) {
+                if (c == 0x27E7) {
+                    this.protected_region = false;
+                } else {
                     output.append(context, c);
                 }
-                continue;
+                return;
+            }
+            if (c == 0x27E6) {
+                this.protected_region = true;
+                return;
             }
-            c = (char) i;
             if (c == '¹' || c == '²' || c == '³') {
-                if (superscript == false) {
-                    superscript = true;
+                if (this.superscript == false) {
+                    this.superscript = true;
                     output.append(context, "\\textsuperscript{");
                 }
             } else {
-                if (superscript == true) {
+                if (this.superscript == true) {
                     output.append(context, "}");
-                    superscript = false;
+                    this.superscript = false;
                 }
             }
             switch (c) {
@@ -1939,9 +2771,38 @@ public enum Encoding {
             }
         }
 
-        return output.to_return;
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end   = offset + length;
+            int start = offset;
+            for (int i=offset; i<end; i++) {
+                char c = buffer[i];
+                if (this.superscript == false && this.protected_region == false && isPlain(c)) { continue; }
+                if (i > start) { this.output.append(context, buffer, start, i - start); }
+                this.put(context, c);
+                start = i + 1;
+            }
+            if (end > start) { this.output.append(context, buffer, start, end - start); }
+        }
+
+        public void finish(CallContext context) {
+            this.superscript      = false;
+            this.protected_region = false;
+        }
+
+        static protected boolean isPlain(char c) {
+            switch (c) {
+                case '%': case '&': case '$': case '#': case '{': case '}': case '_':
+                case '\n': case '¶': case '|': case '<': case '>': case '–': case '§':
+                case '\\': case '—': case '^': case '~': case '¹': case '²': case '³':
+                case 0x27E6:
+                    return false;
+                default:
+                    return true;
+            }
+        }
     }
 
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_LC_UC(CallContext context, String string) {
@@ -1954,40 +2815,86 @@ public enum Encoding {
 
     // ---------------------------------------------------------------------------------------------------
 
-    static protected Pattern mcp1;
-    static protected Pattern mcp2;
-
     static public String recode_LCU_MC(CallContext context, String string) {
         return recode_LCU_MC(context, string, (RecodingTargetContext) null);
     }
 
+    // "_x" becomes "X", and a leading "x" becomes "X"; ASCII only, as before
     static public String recode_LCU_MC(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-
-        if (mcp1 == null) {
-            try {
-                mcp1 = Pattern.compile("_([a-z])");
-                mcp2 = Pattern.compile("^([a-z])");
-            } catch (PatternSyntaxException pse) {
-                CustomaryContext.create(Context.create(context)).throwAssertionProvedFalse(context, pse, "Syntax error in regular expression");
-                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+        int len = string.length();
+        char[] out = new char[len];
+        int n = 0;
+        for (int i=0; i<len; i++) {
+            char c = string.charAt(i);
+            char d;
+            if (c == '_' && i+1 < len && (d = string.charAt(i+1)) >= 'a' && d <= 'z') {
+                out[n++] = (char) (d - 'a' + 'A');
+                i++;
+            } else if (i == 0 && c >= 'a' && c <= 'z') {
+                out[n++] = (char) (c - 'a' + 'A');
+            } else {
+                out[n++] = c;
             }
         }
+        return new String(out, 0, n);
+    }
 
-        Matcher m1 = mcp1.matcher(string);
-        StringBuffer sb1 = new StringBuffer();
-        while (m1.find()) {
-            m1.appendReplacement(sb1, m1.group(1).toUpperCase());
+    /**
+       Streaming variant of the above, a '_' is held back until the next
+       char is known.
+     */
+    static protected class LCUMCTransducer extends RecodingTransducer {
+        protected boolean started;
+        protected boolean underscore;
+
+        public LCUMCTransducer (CallContext context, Output output) {
+            super(context, output);
         }
-        m1.appendTail(sb1);
 
-        Matcher m2 = mcp2.matcher(sb1);
-        StringBuffer sb2 = new StringBuffer();
-        while (m2.find()) {
-            m2.appendReplacement(sb2, m2.group(1).toUpperCase());
+        public void put(CallContext context, char c) {
+            if (this.underscore) {
+                this.underscore = false;
+                if (c >= 'a' && c <= 'z') {
+                    this.output.append(context, (char) (c - 'a' + 'A'));
+                    return;
+                }
+                this.output.append(context, '_');
+            }
+            if (c == '_') {
+                this.underscore = true;
+            } else if (this.started == false && c >= 'a' && c <= 'z') {
+                this.output.append(context, (char) (c - 'a' + 'A'));
+            } else {
+                this.output.append(context, c);
+            }
+            this.started = true;
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end = offset + length;
+            while (offset < end) {
+                if (this.started == false || this.underscore) {
+                    this.put(context, buffer[offset++]);
+                    continue;
+                }
+                int start = offset;
+                while (offset < end && buffer[offset] != '_') { offset++; }
+                if (offset > start) {
+                    this.output.append(context, buffer, start, offset - start);
+                }
+                if (offset < end) {
+                    this.put(context, buffer[offset++]);
+                }
+            }
         }
-        m2.appendTail(sb2);
 
-        return sb2.toString();
+        public void finish(CallContext context) {
+            if (this.underscore) {
+                this.output.append(context, '_');
+            }
+            this.started    = false;
+            this.underscore = false;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -1997,57 +2904,116 @@ public enum Encoding {
     }
 
     static public String recode_MCB_MC(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return string.replaceAll(" ","");
+        return string.indexOf(' ') == -1 ? string : string.replace(" ", "");
     }
 
-    // ---------------------------------------------------------------------------------------------------
+    /**
+       Replaces a char by another one or, if to is negative, removes it;
+       used for MCB to MC and between LCU and LCD.
+     */
+    static protected class CharReplacingTransducer extends RecodingTransducer {
+        protected char from;
+        protected int  to;
+
+        public CharReplacingTransducer (CallContext context, Output output, char from, int to) {
+            super(context, output);
+            this.from = from;
+            this.to   = to;
+        }
 
-    static protected Pattern lcup1;
-    static protected Pattern lcup2;
-    static protected Pattern lcup3;
+        public void put(CallContext context, char c) {
+            if (c != this.from) {
+                this.output.append(context, c);
+            } else if (this.to >= 0) {
+                this.output.append(context, (char) this.to);
+            }
+        }
 
-    static void init_lcup(CallContext context) {
-        if (lcup1 == null) {
-            try {
-                lcup1 = Pattern.compile("\\B([A-Z])([a-z0-9])");
-                lcup2 = Pattern.compile("([a-z0-9])([A-Z]+)");
-                lcup3 = Pattern.compile("([A-Z]+)");
-            } catch (PatternSyntaxException pse) {
-                CustomaryContext.create(Context.create(context)).throwAssertionProvedFalse(context, pse, "Syntax error in regular expression");
-                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end = offset + length;
+            while (offset < end) {
+                int start = offset;
+                while (offset < end && buffer[offset] != this.from) { offset++; }
+                if (offset > start) {
+                    this.output.append(context, buffer, start, offset - start);
+                }
+                if (offset < end) {
+                    this.put(context, buffer[offset++]);
+                }
             }
         }
     }
 
-    static public String recode_MC_LCU(CallContext context, String string) {
-        return recode_MC_LCU(context, string, (RecodingTargetContext) null);
-    }
+    // ---------------------------------------------------------------------------------------------------
 
-    static public String recode_MC_LCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        init_lcup(context);
+    /*
+      The separators which are inserted by the MC conversions, formerly
+      computed by successive regular expressions:
 
-        Matcher m1 = lcup1.matcher(string);
-        StringBuffer sb1 = new StringBuffer();
-        while (m1.find()) {
-            m1.appendReplacement(sb1, "_" + m1.group(1).toLowerCase() + m1.group(2));
-        }
-        m1.appendTail(sb1);
+        \B([A-Z])([a-z0-9])    an upper case letter preceded by a word char
+                               and followed by a lower case letter or digit
+        ([a-z0-9])([A-Z]+)     the first of a run of upper case letters,
+                               preceded by a lower case letter or digit
+
+      Both are checked on the original string, which gives the same
+      result, since the replacements of the first do not create or
+      destroy matches of the second.
+    */
 
-        Matcher m2 = lcup2.matcher(sb1);
-        StringBuffer sb2 = new StringBuffer();
-        while (m2.find()) {
-            m2.appendReplacement(sb2, m2.group(1) + "_" + m2.group(2).toLowerCase());
+    static protected final int MC_NO_BREAK    = 0;
+    static protected final int MC_WORD_BREAK  = 1;
+    static protected final int MC_RUN_BREAK   = 2;
+
+    static protected int getMCBreak(CharSequence string, int i, int len) {
+        char c = string.charAt(i);
+        if (c < 'A' || c > 'Z' || i == 0) { return MC_NO_BREAK; }
+        char n;
+        if (i+1 < len && (((n = string.charAt(i+1)) >= 'a' && n <= 'z') || (n >= '0' && n <= '9')) && isWordBefore(string, i)) {
+            return MC_WORD_BREAK;
+        }
+        char p = string.charAt(i-1);
+        if ((p >= 'a' && p <= 'z') || (p >= '0' && p <= '9')) {
+            return MC_RUN_BREAK;
         }
-        m2.appendTail(sb2);
+        return MC_NO_BREAK;
+    }
 
-        Matcher m3 = lcup3.matcher(sb2);
-        StringBuffer sb3 = new StringBuffer();
-        while (m3.find()) {
-            m3.appendReplacement(sb3, m3.group(1).toLowerCase());
+    // left side of a regular expression word boundary check (\b, \B) at i
+    static protected boolean isWordBefore(CharSequence string, int i) {
+        char p = string.charAt(i-1);
+        if (p < 128) {
+            return (p >= 'a' && p <= 'z') || (p >= 'A' && p <= 'Z') || (p >= '0' && p <= '9') || p == '_';
+        }
+        int cp = Character.codePointBefore(string, i);
+        if (Character.isLetterOrDigit(cp)) { return true; }
+        if (Character.getType(cp) != Character.NON_SPACING_MARK) { return false; }
+        for (int x = i - Character.charCount(cp); x > 0; ) {
+            cp = Character.codePointBefore(string, x);
+            if (Character.isLetterOrDigit(cp)) { return true; }
+            if (Character.getType(cp) != Character.NON_SPACING_MARK) { return false; }
+            x -= Character.charCount(cp);
         }
-        m3.appendTail(sb3);
+        return false;
+    }
+
+    static public String recode_MC_LCU(CallContext context, String string) {
+        return recode_MC_LCU(context, string, (RecodingTargetContext) null);
+    }
 
-        return sb3.toString();
+    static public String recode_MC_LCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        int len = string.length();
+        char[] out = new char[len * 2];
+        int n = 0;
+        for (int i=0; i<len; i++) {
+            char c = string.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (getMCBreak(string, i, len) != MC_NO_BREAK) { out[n++] = '_'; }
+                out[n++] = (char) (c - 'A' + 'a');
+            } else {
+                out[n++] = c;
+            }
+        }
+        return new String(out, 0, n);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2057,23 +3023,22 @@ public enum Encoding {
     }
 
     static public String recode_MC_MCB(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        init_lcup(context);
-
-        Matcher m1 = lcup1.matcher(string);
-        StringBuffer sb1 = new StringBuffer();
-        while (m1.find()) {
-            m1.appendReplacement(sb1, " " + m1.group(1) + m1.group(2));
-        }
-        m1.appendTail(sb1);
-
-        Matcher m2 = lcup2.matcher(sb1);
-        StringBuffer sb2 = new StringBuffer();
-        while (m2.find()) {
-            m2.appendReplacement(sb2, m2.group(1) + " " + m2.group(2));
+        int len = string.length();
+        char[] out = null;
+        int n = 0;
+        for (int i=0; i<len; i++) {
+            char c = string.charAt(i);
+            if (c >= 'A' && c <= 'Z' && getMCBreak(string, i, len) != MC_NO_BREAK) {
+                if (out == null) {
+                    out = new char[len * 2];
+                    string.getChars(0, i, out, 0);
+                    n = i;
+                }
+                out[n++] = ' ';
+            }
+            if (out != null) { out[n++] = c; }
         }
-        m2.appendTail(sb2);
-
-        return sb2.toString();
+        return out == null ? string : new String(out, 0, n);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2088,49 +3053,154 @@ public enum Encoding {
 
     // ---------------------------------------------------------------------------------------------------
 
-    static protected Pattern ucup1;
-    static protected Pattern ucup2;
-    static protected Pattern ucup3;
-
     static public String recode_MC_UCU(CallContext context, String string) {
         return recode_MC_UCU(context, string, (RecodingTargetContext) null);
     }
 
+    // note: only word breaks are separated here, not runs of upper case
+    // letters (i.e. "myURL" becomes "MYURL"); that's how it always was
     static public String recode_MC_UCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-
-        if (ucup1 == null) {
-            try {
-                ucup1 = Pattern.compile("\\B([A-Z])([a-z0-9])");
-                ucup2 = Pattern.compile("([a-z0-9])([A-Z]+)");
-                ucup3 = Pattern.compile("([a-z]+)");
-            } catch (PatternSyntaxException pse) {
-                CustomaryContext.create(Context.create(context)).throwAssertionProvedFalse(context, pse, "Syntax error in regular expression");
-                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+        int len = string.length();
+        char[] out = new char[len * 2];
+        int n = 0;
+        for (int i=0; i<len; i++) {
+            char c = string.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                out[n++] = (char) (c - 'a' + 'A');
+            } else {
+                if (c >= 'A' && c <= 'Z' && getMCBreak(string, i, len) == MC_WORD_BREAK) { out[n++] = '_'; }
+                out[n++] = c;
             }
         }
+        return new String(out, 0, n);
+    }
 
-        Matcher m1 = ucup1.matcher(string);
-        StringBuffer sb1 = new StringBuffer();
-        while (m1.find()) {
-            m1.appendReplacement(sb1, "_" + m1.group(1) + m1.group(2).toUpperCase());
+    /**
+       Streaming variant of MC to LCU, MCB and UCU: an upper case letter
+       is held back until the next char is known, and the word check of
+       getMCBreak is kept up to date while passing, so that no further
+       lookbehind is needed.
+     */
+    static protected class MCTransducer extends RecodingTransducer {
+        protected Encoding target;
+        protected boolean  started;
+        protected char     previous;
+        protected boolean  word;
+        protected boolean  letter_or_digit;
+        protected char     high;
+        protected boolean  letter_or_digit_before_high;
+        protected char     held;
+        protected char     before_held;
+        protected boolean  word_before_held;
+        protected char[]   single;
+        protected char[]   out;
+
+        public MCTransducer (CallContext context, Output output, Encoding target) {
+            super(context, output);
+            this.target = target;
+            this.single = new char[1];
+        }
+
+        public void put(CallContext context, char c) {
+            this.single[0] = c;
+            this.put(context, this.single, 0, 1);
         }
-        m1.appendTail(sb1);
 
-        Matcher m2 = ucup2.matcher(sb1);
-        StringBuffer sb2 = new StringBuffer();
-        while (m2.find()) {
-            m2.appendReplacement(sb2, m2.group(1).toUpperCase() + "_" + m2.group(2));
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int needed = 2 * length + 2;
+            if (this.out == null || this.out.length < needed) { this.out = new char[needed]; }
+            char[] out = this.out;
+            int    n   = 0;
+            int    end = offset + length;
+            for (int i=offset; i<end; i++) {
+                char c = buffer[i];
+                if (this.held != 0) {
+                    n = this.release(((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')), out, n);
+                }
+                if (c >= 'A' && c <= 'Z' && this.started) {
+                    this.held             = c;
+                    this.before_held      = this.previous;
+                    this.word_before_held = this.word;
+                } else if (c >= 'A' && c <= 'Z' && this.target == LCU) {
+                    out[n++] = (char) (c - 'A' + 'a');
+                } else if (c >= 'a' && c <= 'z' && this.target == UCU) {
+                    out[n++] = (char) (c - 'a' + 'A');
+                } else {
+                    out[n++] = c;
+                }
+                this.track(c);
+            }
+            if (n > 0) {
+                this.output.append(context, out, 0, n);
+            }
+        }
+
+        // see getMCBreak
+        protected int release(boolean lower_next, char[] out, int n) {
+            char c = this.held;
+            this.held = 0;
+            int mc_break =   (lower_next && this.word_before_held) ? MC_WORD_BREAK
+                           : ((this.before_held >= 'a' && this.before_held <= 'z') || (this.before_held >= '0' && this.before_held <= '9')) ? MC_RUN_BREAK
+                           : MC_NO_BREAK;
+            if (this.target == LCU) {
+                if (mc_break != MC_NO_BREAK) { out[n++] = '_'; }
+                out[n++] = (char) (c - 'A' + 'a');
+            } else if (this.target == MCB) {
+                if (mc_break != MC_NO_BREAK) { out[n++] = ' '; }
+                out[n++] = c;
+            } else {
+                if (mc_break == MC_WORD_BREAK) { out[n++] = '_'; }
+                out[n++] = c;
+            }
+            return n;
         }
-        m2.appendTail(sb2);
 
-        Matcher m3 = ucup3.matcher(sb1);
-        StringBuffer sb3 = new StringBuffer();
-        while (m3.find()) {
-            m3.appendReplacement(sb3, m3.group(1).toUpperCase());
+        // the result of isWordBefore after c; behind non spacing marks,
+        // it depends on the last other char, which is checked without
+        // the ASCII special case there, i.e. '_' does not count
+        protected void track(char c) {
+            boolean before = this.letter_or_digit;
+            int     cp     = c;
+            if (this.high != 0) {
+                if (Character.isLowSurrogate(c)) {
+                    before = this.letter_or_digit_before_high;
+                    cp     = Character.toCodePoint(this.high, c);
+                }
+                this.high = 0;
+            }
+            if (c < 128) {
+                this.letter_or_digit = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+                this.word            = this.letter_or_digit || c == '_';
+            } else if (Character.isLetterOrDigit(cp)) {
+                this.letter_or_digit = true;
+                this.word            = true;
+            } else if (Character.getType(cp) == Character.NON_SPACING_MARK) {
+                this.letter_or_digit = before;
+                this.word            = before;
+            } else {
+                if (Character.isHighSurrogate(c)) {
+                    this.high                        = c;
+                    this.letter_or_digit_before_high = before;
+                }
+                this.letter_or_digit = false;
+                this.word            = false;
+            }
+            this.previous = c;
+            this.started  = true;
         }
-        m3.appendTail(sb3);
 
-        return sb3.toString();
+        public void finish(CallContext context) {
+            if (this.held != 0) {
+                if (this.out == null) { this.out = new char[2]; }
+                int n = this.release(false, this.out, 0);
+                this.output.append(context, this.out, 0, n);
+            }
+            this.started         = false;
+            this.previous        = 0;
+            this.word            = false;
+            this.letter_or_digit = false;
+            this.high            = 0;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2151,7 +3221,15 @@ public enum Encoding {
 
     static public String recode_MC_CB(CallContext context, String string, RecodingTargetContext recoding_target_context) {
         int len = string.length();
-        return (len == 0 ? "" : (string.substring(0,1).toLowerCase() + (len == 1 ? "" : string.substring(1))));
+        if (len == 0) { return ""; }
+        char c = string.charAt(0);
+        if (c < 128) {
+            if (c < 'A' || c > 'Z') { return string; }
+            char[] chars = string.toCharArray();
+            chars[0] = (char) (c - 'A' + 'a');
+            return new String(chars);
+        }
+        return string.substring(0,1).toLowerCase() + (len == 1 ? "" : string.substring(1));
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2162,7 +3240,61 @@ public enum Encoding {
 
     static public String recode_MC_STUC(CallContext context, String string, RecodingTargetContext recoding_target_context) {
         int len = string.length();
-        return (len == 0 ? "" : (string.substring(0,1).toUpperCase() + (len == 1 ? "" : string.substring(1))));
+        if (len == 0) { return ""; }
+        char c = string.charAt(0);
+        if (c < 128) {
+            if (c < 'a' || c > 'z') { return string; }
+            char[] chars = string.toCharArray();
+            chars[0] = (char) (c - 'a' + 'A');
+            return new String(chars);
+        }
+        return string.substring(0,1).toUpperCase() + (len == 1 ? "" : string.substring(1));
+    }
+
+    /**
+       Streaming variant of MC to CB and STUC, converts the first char
+       and passes on the rest.
+     */
+    static protected class FirstCharTransducer extends RecodingTransducer {
+        protected boolean upper;
+        protected boolean started;
+
+        public FirstCharTransducer (CallContext context, Output output, boolean upper) {
+            super(context, output);
+            this.upper = upper;
+        }
+
+        public void put(CallContext context, char c) {
+            if (this.started) {
+                this.output.append(context, c);
+                return;
+            }
+            this.started = true;
+            if (c >= 128) {
+                String first = String.valueOf(c);
+                this.output.append(context, this.upper ? first.toUpperCase() : first.toLowerCase());
+            } else if (this.upper && c >= 'a' && c <= 'z') {
+                this.output.append(context, (char) (c - 'a' + 'A'));
+            } else if (this.upper == false && c >= 'A' && c <= 'Z') {
+                this.output.append(context, (char) (c - 'A' + 'a'));
+            } else {
+                this.output.append(context, c);
+            }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            if (length > 0 && this.started == false) {
+                this.put(context, buffer[offset++]);
+                length--;
+            }
+            if (length > 0) {
+                this.output.append(context, buffer, offset, length);
+            }
+        }
+
+        public void finish(CallContext context) {
+            this.started = false;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2177,7 +3309,7 @@ public enum Encoding {
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_LCD_LCU(CallContext context, String string) {
-        return recode_LCU_LCD(context, string, (RecodingTargetContext) null);
+        return recode_LCD_LCU(context, string, (RecodingTargetContext) null);
     }
 
     static public String recode_LCD_LCU(CallContext context, String string, RecodingTargetContext recoding_target_context) {
@@ -2222,6 +3354,53 @@ public enum Encoding {
         return sb.toString();
     }
 
+    static protected class IndentTransducer extends RecodingTransducer {
+        protected RecodingTargetContext recoding_target_context;
+        protected char[]                indentation;
+
+        public IndentTransducer(CallContext context, Output output, RecodingTargetContext recoding_target_context, String indent, Integer amount) {
+            super(context, output);
+            this.recoding_target_context = recoding_target_context;
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<amount; i++) { sb.append(indent); }
+            this.indentation = sb.toString().toCharArray();
+        }
+
+        public void put(CallContext context, char c) {
+            if (   this.recoding_target_context != null
+                && this.recoding_target_context.getBeginningOfLine(context)) {
+                this.output.append(context, this.indentation, 0, this.indentation.length);
+            }
+            this.output.append(context, c);
+            if (this.recoding_target_context != null) {
+                this.recoding_target_context.setBeginningOfLine(context, c == '\n');
+            } else if (c == '\n') {
+                this.output.append(context, this.indentation, 0, this.indentation.length);
+            }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end   = offset + length;
+            int start = offset;
+            while (start < end) {
+                if (   this.recoding_target_context != null
+                    && this.recoding_target_context.getBeginningOfLine(context)) {
+                    this.output.append(context, this.indentation, 0, this.indentation.length);
+                }
+                int i = start;
+                while (i < end && buffer[i] != '\n') { i++; }
+                if (i < end) { i++; }
+                this.output.append(context, buffer, start, i - start);
+                if (this.recoding_target_context != null) {
+                    this.recoding_target_context.setBeginningOfLine(context, buffer[i - 1] == '\n');
+                } else if (buffer[i - 1] == '\n') {
+                    this.output.append(context, this.indentation, 0, this.indentation.length);
+                }
+                start = i;
+            }
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_UTF8_ABBREV(CallContext context, String string, int limit, String postfix) {
@@ -2236,6 +3415,47 @@ public enum Encoding {
         return string;
     }
 
+    static protected class AbbrevTransducer extends RecodingTransducer {
+        protected int    limit;
+        protected String abbreviation_postfix;
+        protected int    remaining;
+        protected String postfix;
+
+        public AbbrevTransducer(CallContext context, Output output, Integer limit, String postfix) {
+            super(context, output);
+            this.limit                = limit < 0 ? 0 : limit;
+            this.abbreviation_postfix = postfix;
+            this.finish(context);
+        }
+
+        public void finish(CallContext context) {
+            this.remaining = this.limit;
+            this.postfix   = this.abbreviation_postfix;
+        }
+
+        public void put(CallContext context, char c) {
+            if (this.remaining > 0) {
+                this.output.append(context, c);
+                this.remaining--;
+            } else if (this.postfix != null) {
+                this.output.append(context, this.postfix);
+                this.postfix = null;
+            }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            if (length == 0) { return; }
+            int n = length < this.remaining ? length : this.remaining;
+            if (n > 0) {
+                this.output.append(context, buffer, offset, n);
+                this.remaining -= n;
+            }
+            if (n < length) {
+                this.put(context, buffer[offset + n]);
+            }
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------
 
     static public String recode_UTF8_REGEXP(CallContext context, String string, String pattern, String replacement) {
@@ -2243,7 +3463,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_REGEXP(CallContext context, String string, RecodingTargetContext recoding_target_context, String pattern, String replacement) {
-        return string.replaceAll(pattern, replacement);
+        return RegexpReplacement.get(context, pattern, replacement).replaceAll(context, string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2253,13 +3473,19 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_REGRP(CallContext context, String string, RecodingTargetContext recoding_target_context, String regexp, Integer subgroup) {
-        Pattern pattern;
+        return recode_UTF8_REGRP(context, string, compileRegexp(context, regexp), subgroup);
+    }
+
+    static protected Pattern compileRegexp(CallContext context, String regexp) {
         try {
-            pattern = Pattern.compile(regexp);
+            return RegexpReplacement.getPattern(context, regexp);
         } catch (PatternSyntaxException pse) {
             CustomaryContext.create(Context.create(context)).throwAssertionProvedFalse(context, pse, "Syntax error in regular expression '%(regexp)'", "regexp", regexp);
             throw (ExceptionAssertionProvedFalse) null; // compiler insists
         }
+    }
+
+    static protected String recode_UTF8_REGRP(CallContext context, String string, Pattern pattern, Integer subgroup) {
         Matcher matcher = pattern.matcher(string);
         if ( ! matcher.find()) { return null; }
 
@@ -2273,48 +3499,7 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_FIXED(CallContext context, String string, RecodingTargetContext recoding_target_context, int length, String fill_character, String justification, int max_length, String truncate_pattern) {
-        if (truncate_pattern != null && truncate_pattern.isEmpty() == false) {
-            if (justification.matches("[rRcC]")) {
-                string = string.replaceFirst("^("+truncate_pattern+")+","");
-            }
-            if (justification.matches("[lLcC]")) {
-                string = string.replaceFirst("("+truncate_pattern+")+$","");
-            }
-        }
-
-        int len = string.length();
-        if (max_length == 0) { max_length = length; }
-        if (len > max_length) {
-            if (justification.matches("[lLcC]")) {
-                return string.substring(0, max_length);
-            } else {
-                return string.substring(len -max_length, len);
-            }
-        } else if (len == length) {
-            return string;
-        }
-        int diff = length - len;
-        StringBuilder sb = new StringBuilder();
-        if (justification.matches("[rR]")) {
-            for (int i=0; i<diff; i++) {
-                sb.append(fill_character);
-            }
-        } else if (justification.matches("[cC]")) {
-            for (int i=0; i<(diff/2); i++) {
-                sb.append(fill_character);
-            }
-        }
-        sb.append(string);
-        if (justification.matches("[lL]")) {
-            for (int i=0; i<diff; i++) {
-                sb.append(fill_character);
-            }
-        } else if (justification.matches("[cC]")) {
-            for (int i=0; i<(diff/2)+(diff%2); i++) {
-                sb.append(fill_character);
-            }
-        }
-        return sb.toString();
+        return new FixedLayout(context, length, fill_character, justification, max_length, truncate_pattern).apply(context, string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2341,43 +3526,27 @@ public enum Encoding {
     // ---------------------------------------------------------------------------------------------------
 
     /**
-       Encoding of UTF8 Strings to application/x-www-form-urlencoded via standard method.
-       
-       Similarly this would work for
-       US-ASCII      Seven-bit ASCII, a.k.a. ISO646-US, a.k.a. the Basic Latin block of the Unicode character set
-       ISO-8859-1    ISO Latin Alphabet No. 1, a.k.a. ISO-LATIN-1
-       UTF-8         Eight-bit UCS Transformation Format
-       UTF-16LE      Sixteen-bit UCS Transformation Format, little-endian byte order
-       UTF-16        Sixteen-bit UCS Transformation Format, byte order identified by an optional byte-order mark
+       Encoding of UTF8 Strings to application/x-www-form-urlencoded, with
+       the same result as java.net.URLEncoder with charset UTF-8, see
+       PercentEncoder.
        
        @param context
        @param string
        @return
      */
     static public String recode_UTF8_URIFORM(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        initialise(context);
-        try {
-            return URLEncoder.encode(string, "UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            CustomaryContext.create((Context)context).throwLimitation(context, "System (VM) does not support UTF-8 encoding");
-            throw (ExceptionLimitation) null;
-        }
+        return PercentEncoder.encode(context, string, true);
     }
 
     /**
-      Decode von UTF8 Strings nach application/x-www-form-urlencoded per Standardfunktion.
+      Decode von application/x-www-form-urlencoded nach UTF8 Strings, siehe PercentDecoder.
       @param context
       @param string
       @return
     */
     static public String recode_URIFORM_UTF8(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        initialise(context);
-        try {
-            return URLDecoder.decode(string, "UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            CustomaryContext.create((Context)context).throwLimitation(context, "System (VM) does not support UTF-8 encoding");
-            throw (ExceptionLimitation) null;
-        }
+        if (string.indexOf('%') == -1 && string.indexOf('+') == -1) { return string; }
+        return decodePercent(context, string, null, true).toString();
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2407,6 +3576,21 @@ public enum Encoding {
     }
 
     static public String recode_DOCBOOK_HTMLPRE(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        return recode_DOCBOOK_HTMLPRE(context, string, null, recoding_target_context).toString();
+    }
+
+    static public StringBuilder recode_DOCBOOK_HTMLPRE(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        output = prepareOutput(context, output, input.length() + 16);
+        int mark = output.length();
+        if (DocBookTokenizer.tokenize(input, DocBookTokenizer.HTMLPRE_RULES, new DocBookTokenizer.HTMLPreSink(output)) == false) {
+            output.setLength(mark);
+            output.append(recode_DOCBOOK_HTMLPRE_regexp(context, input.toString()));
+        }
+        return output;
+    }
+
+    // the former implementation, used for input the tokenizer rejects
+    static protected String recode_DOCBOOK_HTMLPRE_regexp(CallContext context, String string) {
         return string.replaceAll("(<para[^>]*>)|(</para>)","").replaceAll("&","&amp;").replaceAll(">","&gt;").replaceAll("<","&lt;");
     }
     
@@ -2429,6 +3613,118 @@ public enum Encoding {
     static public String recode_XML_UTF8(CallContext context, String string, RecodingTargetContext recoding_target_context) {
         return string.replaceFirst("^<[CDATA[(.*)]]>","$1").replaceAll("&lt;", "<").replaceAll("&gt;",">").replaceAll("&amp;","&");
     }
+
+    /**
+       Streaming variant of the above, the entities are replaced in a
+       single pass, which gives the same result, since no replacement
+       creates or destroys another entity.
+
+       Note that the first expression is not what it looks like: the
+       brackets form a character class, so it matches "<", one of
+       "CDAT(.*)" and ">" only, and then fails, since there is no group
+       1. Input starting this way is buffered and recoded as a whole, to
+       fail like before.
+     */
+    static protected class XMLTransducer extends RecodingTransducer {
+        static protected final String[] ENTITIES     = { "&lt;", "&gt;", "&amp;" };
+        static protected final char[]   REPLACEMENTS = { '<', '>', '&' };
+
+        protected StringBuilder head;
+        protected boolean       buffering;
+        protected StringBuilder entity;
+
+        public XMLTransducer (CallContext context, Output output) {
+            super(context, output);
+            this.head   = new StringBuilder(3);
+            this.entity = new StringBuilder(5);
+        }
+
+        public void put(CallContext context, char c) {
+            if (this.buffering) {
+                this.head.append(c);
+            } else if (this.head != null) {
+                this.head.append(c);
+                if (this.head.length() == 3) { this.checkHead(context); }
+            } else if (this.entity.length() > 0 || c == '&') {
+                this.decode(context, c);
+            } else {
+                this.output.append(context, c);
+            }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            int end = offset + length;
+            while (offset < end) {
+                if (this.buffering || this.head != null || this.entity.length() > 0) {
+                    this.put(context, buffer[offset++]);
+                    continue;
+                }
+                int start = offset;
+                while (offset < end && buffer[offset] != '&') { offset++; }
+                if (offset > start) {
+                    this.output.append(context, buffer, start, offset - start);
+                }
+                if (offset < end) {
+                    this.decode(context, buffer[offset++]);
+                }
+            }
+        }
+
+        protected void checkHead(CallContext context) {
+            StringBuilder head = this.head;
+            if (head.length() == 3 && head.charAt(0) == '<' && "CDAT(.*)".indexOf(head.charAt(1)) != -1 && head.charAt(2) == '>') {
+                this.buffering = true;
+                return;
+            }
+            this.head = null;
+            for (int i=0; i<head.length(); i++) {
+                this.put(context, head.charAt(i));
+            }
+        }
+
+        protected void decode(CallContext context, char c) {
+            StringBuilder entity = this.entity;
+            entity.append(c);
+            boolean partial = false;
+            for (int e=0; e<ENTITIES.length; e++) {
+                String candidate = ENTITIES[e];
+                if (entity.length() > candidate.length() || regionMatches(entity, candidate) == false) { continue; }
+                if (entity.length() == candidate.length()) {
+                    entity.setLength(0);
+                    this.output.append(context, REPLACEMENTS[e]);
+                    return;
+                }
+                partial = true;
+            }
+            if (partial) { return; }
+            // no entity, the '&' is passed on and the rest is checked again
+            String rest = entity.substring(1);
+            entity.setLength(0);
+            this.output.append(context, '&');
+            for (int i=0; i<rest.length(); i++) {
+                this.put(context, rest.charAt(i));
+            }
+        }
+
+        static protected boolean regionMatches(CharSequence entity, String candidate) {
+            for (int i=0; i<entity.length(); i++) {
+                if (entity.charAt(i) != candidate.charAt(i)) { return false; }
+            }
+            return true;
+        }
+
+        public void finish(CallContext context) {
+            if (this.buffering) {
+                this.output.append(context, recode_XML_UTF8(context, this.head.toString(), (RecodingTargetContext) null));
+            } else {
+                if (this.head != null) { this.checkHead(context); }
+                this.output.append(context, this.entity);
+            }
+            this.head      = new StringBuilder(3);
+            this.buffering = false;
+            this.entity.setLength(0);
+        }
+    }
     
     // ---------------------------------------------------------------------------------------------------
 
@@ -2437,18 +3733,58 @@ public enum Encoding {
     }
 
     static public String recode_DOCBOOK_HTML(CallContext context, String string, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Integer heading_depth) {
-        string = string.replaceAll("<para[^>]*>","<p>").replaceAll("</para>","</p>")
-                       .replaceAll("<section[^>]*>","<div class=\"section\">").replaceAll("</section>","</div>")
-                       .replaceAll("<(/?)title[^>]*>","<$1h" + heading_depth + ">")
-                       .replaceAll("<(/?)simplelist[^>]*>","<$1ul>")
-                       .replaceAll("<(/?)member[^>]*>","<$1li>")
-                       .replaceAll("<ulink\\s+url=\"([^\"]*)\"\\s*>","<a href=\"$1\">").replaceAll("</ulink>","</a>")
-                       .replaceAll("<programlisting\\s+language=\"([^\"]*)\"\\s*>","<pre class=\"$1\">").replaceAll("<(/?)programlisting[^>]*>","<$1pre>");
+        return recode_DOCBOOK_HTML(context, string, null, recoding_target_context, link_recoder, heading_depth).toString();
+    }
+
+    static public StringBuilder recode_DOCBOOK_HTML(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Integer heading_depth) {
+        return recode_DOCBOOK_HTML(context, input, output, recoding_target_context, link_recoder, heading_depth, (DocBookBlockCache) null);
+    }
+
+    /**
+       With a block cache, only the blocks which changed since the last
+       document of the cache are tokenized again, and link results are
+       cached, too; the links are still resolved over the whole document.
+     */
+    static public StringBuilder recode_DOCBOOK_HTML(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Integer heading_depth, DocBookBlockCache block_cache) {
+        int len = input.length();
+        output = prepareOutput(context, output, len + 16);
+
+        StringBuilder tags = link_recoder == null ? output : new StringBuilder(len + 16);
+        DocBookTokenizer.Rule[] rules = DocBookTokenizer.getHTMLRules(heading_depth);
+        if (block_cache == null || block_cache.appendBlocks(context, input, tags, "DOCBOOK/HTML/" + heading_depth, rules) == false) {
+            int mark = tags.length();
+            if (DocBookTokenizer.tokenize(input, rules, new DocBookTokenizer.TextSink(tags)) == false) {
+                tags.setLength(mark);
+                tags.append(recode_DOCBOOK_HTML_regexp(context, input.toString(), heading_depth));
+            }
+        }
+
+        if (link_recoder != null) {
+            appendDocBookLinks(context, tags, output, block_cache == null ? link_recoder : block_cache.getLinkRecoder(context, link_recoder));
+        }
+        return output;
+    }
+
+    // the former implementation, used for input the tokenizer rejects
+    static protected String recode_DOCBOOK_HTML_regexp(CallContext context, String string, Integer heading_depth) {
+        return string.replaceAll("<para[^>]*>","<p>").replaceAll("</para>","</p>")
+                     .replaceAll("<section[^>]*>","<div class=\"section\">").replaceAll("</section>","</div>")
+                     .replaceAll("<(/?)title[^>]*>","<$1h" + heading_depth + ">")
+                     .replaceAll("<(/?)simplelist[^>]*>","<$1ul>")
+                     .replaceAll("<(/?)member[^>]*>","<$1li>")
+                     .replaceAll("<ulink\\s+url=\"([^\"]*)\"\\s*>","<a href=\"$1\">").replaceAll("</ulink>","</a>")
+                     .replaceAll("<programlisting\\s+language=\"([^\"]*)\"\\s*>","<pre class=\"$1\">").replaceAll("<(/?)programlisting[^>]*>","<$1pre>");
+    }
 
-        if (link_recoder == null) { return string; }
+    static protected void appendDocBookLinks(CallContext context, CharSequence string, StringBuilder output, LinkRecoder link_recoder) {
+        if (link_recoder instanceof BatchLinkRecoder) {
+            LinkBatch batch = new LinkBatch((BatchLinkRecoder) link_recoder);
+            collectDocBookLinks(context, string, batch);
+            link_recoder = batch.resolve(context);
+        }
 
         Matcher m = link_pattern.matcher(string);
-        StringBuffer sb = new StringBuffer();
+        int last = 0;
         boolean outside = true;
         boolean warning = false;
         while (m.find()) {
@@ -2456,45 +3792,34 @@ public enum Encoding {
             String links = m.group(1);
             String atts  = m.group(2);
             String linke = m.group(3);
-//             int s = m.start();
-//             int e = m.end();
             if (outside && "<link".equals(links) && linke == null) {
-                Matcher m2 = link_att_pattern.matcher(atts);
-                HashMap<String,String> atth = new HashMap<String,String>();
-                while (m2.find()) {
-                    String name  = m2.group(1);
-                    String value = m2.group(2);
-                    atth.put(name, value);
-                }
-                String recoded_link = link_recoder.recode(context, "link", atth);
-                m.appendReplacement(sb, "");
+                String recoded_link = link_recoder.recode(context, "link", getLinkAttributes(atts));
+                output.append(string, last, m.start());
                 if (recoded_link != null) {
-                    sb.append("<a href=\"" + recoded_link + "\">");
+                    output.append("<a href=\"").append(recoded_link).append("\">");
                     warning = false;
                 } else {
-                    sb.append("<span class=\"state warning\">&lt;link " + atts + "&gt;</span>");
+                    output.append("<span class=\"state warning\">&lt;link ").append(atts).append("&gt;</span>");
                     warning = true;
                 }
                 outside = false;
             } else if (outside && ("<mediaobject".equals(links) || "<inlinemediaobject".equals(links)) && linke == null) {
-                m.appendReplacement(sb, "");
+                output.append(string, last, m.start());
                 outside = false;
             } else if (outside == false && links == null && "</link>".equals(linke)) {
-                m.appendReplacement(sb, "");
+                output.append(string, last, m.start());
                 if (warning == false) {
-                    sb.append("</a>");
+                    output.append("</a>");
                 } else {
-                    sb.append("<span class=\"state warning\">&lt;/link&gt;</span>");
+                    output.append("<span class=\"state warning\">&lt;/link&gt;</span>");
                 }
                 warning = false;
                 outside = true;
             } else if (outside == false && links == null && ("</mediaobject>".equals(linke) || "</inlinemediaobject>".equals(linke))) {
-                StringBuffer lcsb = new StringBuffer();
-                m.appendReplacement(lcsb, "");
-                String lcs = lcsb.toString();
+                String lcs = string.subSequence(last, m.start()).toString();
                 Matcher m2 = medialink_pattern.matcher(lcs);
                 if (m2.matches() == false) {
-                    sb.append("<span class=\"state warning\">&lt;mediaobject&gt;" + recode_UTF8_XML(context, lcs) + "&lt;/mediaobject&gt;</span>");
+                    output.append("<span class=\"state warning\">&lt;mediaobject&gt;").append(recode_UTF8_XML(context, lcs)).append("&lt;/mediaobject&gt;</span>");
                     warning = true;
                 } else {
                     String ref = m2.group(1);
@@ -2505,45 +3830,106 @@ public enum Encoding {
 
                     String recoded_link = link_recoder.recode(context, "mediaobject", atth);
                     if (recoded_link != null) {
-                        sb.append("<img src=\"");
-                        sb.append(recoded_link);
-                        sb.append("\" alt=\"");
-                        sb.append(alt);
-                        sb.append("\"/>");
+                        output.append("<img src=\"").append(recoded_link).append("\" alt=\"").append(alt).append("\"/>");
                         warning = false;
                     } else {
-                        sb.append("<span class=\"state warning\">&lt;link " + atts + "&gt;</span>");
+                        output.append("<span class=\"state warning\">&lt;link ").append(atts).append("&gt;</span>");
                         warning = true;
                     }
                 }
                 outside = true;
             } else {
-                m.appendReplacement(sb, "");
-                sb.append("<span class=\"state error\">" + recode_UTF8_XML(context, all) + "</span>");
+                output.append(string, last, m.start());
+                output.append("<span class=\"state error\">").append(recode_UTF8_XML(context, all)).append("</span>");
             }
+            last = m.end();
         }
-        m.appendTail(sb);
-        return sb.toString();
+        output.append(string, last, string.length());
+    }
+
+    // the same walk as appendDocBookLinks, but only gathering the requests
+    static protected void collectDocBookLinks(CallContext context, CharSequence string, LinkBatch batch) {
+        Matcher m = link_pattern.matcher(string);
+        int last = 0;
+        boolean outside = true;
+        while (m.find()) {
+            String links = m.group(1);
+            String linke = m.group(3);
+            if (outside && "<link".equals(links) && linke == null) {
+                batch.add(context, "link", getLinkAttributes(m.group(2)));
+                outside = false;
+            } else if (outside && ("<mediaobject".equals(links) || "<inlinemediaobject".equals(links)) && linke == null) {
+                outside = false;
+            } else if (outside == false && links == null && "</link>".equals(linke)) {
+                outside = true;
+            } else if (outside == false && links == null && ("</mediaobject>".equals(linke) || "</inlinemediaobject>".equals(linke))) {
+                Matcher m2 = medialink_pattern.matcher(string.subSequence(last, m.start()));
+                if (m2.matches()) {
+                    HashMap<String,String> atth = new HashMap<String,String>();
+                    atth.put("imageobject/imagedata/fileref", m2.group(1));
+                    batch.add(context, "mediaobject", atth);
+                }
+                outside = true;
+            }
+            last = m.end();
+        }
+    }
 
+    static protected HashMap<String,String> getLinkAttributes(String atts) {
+        Matcher m = link_att_pattern.matcher(atts);
+        HashMap<String,String> atth = new HashMap<String,String>();
+        while (m.find()) {
+            atth.put(m.group(1), m.group(2));
+        }
+        return atth;
     }
 
     // ---------------------------------------------------------------------------------------------------
 
     static public EncodingService encoding_service_DOCPAGE_HTML;
     
-    static public String recode_DOCPAGE_HTML(CallContext context, String string, LinkRecoder link_recoder, Map arguments) {
+    static public String recode_DOCPAGE_HTML(CallContext context, String string, LinkRecoder link_recoder, Map<String,?> arguments) {
         return recode_DOCPAGE_HTML(context, string, (RecodingTargetContext) null, link_recoder, arguments);
     }
 
-    static public StringBuilder recode_DOCPAGE_HTML(CallContext context, CharSequence string, StringBuilder output, LinkRecoder link_recoder, Map arguments) {
+    static public StringBuilder recode_DOCPAGE_HTML(CallContext context, CharSequence string, StringBuilder output, LinkRecoder link_recoder, Map<String,?> arguments) {
         return recode_DOCPAGE_HTML(context, string, output, (RecodingTargetContext) null, link_recoder, arguments);
     }
 
-    static public String recode_DOCPAGE_HTML(CallContext context, String string, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Map arguments) {
+    static public String recode_DOCPAGE_HTML(CallContext context, String string, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Map<String,?> arguments) {
         return recode_DOCPAGE_HTML(context, string, null, recoding_target_context, link_recoder, arguments).toString();
     }
 
-    static public StringBuilder recode_DOCPAGE_HTML(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Map arguments) {
+    static public StringBuilder recode_DOCPAGE_HTML(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Map<String,?> arguments) {
+        return recode_DOCPAGE_HTML(context, input, output, recoding_target_context, link_recoder, arguments, (DocBookBlockCache) null, getDefaultAbbreviationCache(context));
+    }
+
+    static protected volatile AbbreviationCache default_abbreviation_cache;
+
+    /**
+       The bounded abbreviation cache used by DOCPAGE to HTML if none is
+       passed explicitly; invalidate it if the expansions of a recoder
+       change.
+     */
+    static public AbbreviationCache getDefaultAbbreviationCache(CallContext context) {
+        AbbreviationCache cache = default_abbreviation_cache;
+        if (cache == null) {
+            synchronized (Encoding.class) {
+                cache = default_abbreviation_cache;
+                if (cache == null) {
+                    default_abbreviation_cache = cache = new AbbreviationCache(context);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+       The page is recoded by the DOCPAGE service as a whole; a block
+       cache is only used for link results here. An abbreviation cache
+       keeps the results of the abbreviation recoder across pages.
+     */
+    static public StringBuilder recode_DOCPAGE_HTML(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context, LinkRecoder link_recoder, Map<String,?> arguments, DocBookBlockCache block_cache, AbbreviationCache abbreviation_cache) {
 
         /*
           Well, this is somewhat strange.
@@ -2564,78 +3950,114 @@ public enum Encoding {
           Workaround:
           - link-handling in page2html disableble
           - "doclet2page" not considered
-          - here links with two stringbuffers - imperformant
+          - here links and abbreviations in a pass over the service output
 
           Think about it more thorough how to unify better
-
-          Plus (horror...):
-               "Matcher.append..." akcepts only StringBuffer, not StringBuilder
          */
 
         int len = input.length();
         output = prepareOutput(context, output, len);
 
-        StringBuffer intermediate1 = new StringBuffer(len);
-
         if (encoding_service_DOCPAGE_HTML == null) {
             encoding_service_DOCPAGE_HTML = getEncodingService(context, Encoding.DOCPAGE, Encoding.HTML);
         }
 
-        encoding_service_DOCPAGE_HTML.recode(context, input, intermediate1, link_recoder, arguments);
-
         if (link_recoder == null) {
-            output.append(intermediate1);
+            encoding_service_DOCPAGE_HTML.recode(context, input, output, link_recoder, arguments);
             return output;
         }
 
-        StringBuffer intermediate2 = new StringBuffer(len);
-        {
-            Matcher m1 = oorl_pattern.matcher(intermediate1.toString());
-            boolean outside = true;
-            boolean warning = false;
-            while (m1.find()) {
-                String all   = m1.group(0);
-                String link  = m1.group(1);
-                String recoded_link = link_recoder.recode(context, link, null);
-                m1.appendReplacement(intermediate2, "");
-                if (recoded_link != null) {
-                    intermediate2.append("\"" + recoded_link + "\"");
-                } else {
-                    intermediate2.append("\"javascript:alert('Invalid Link: " + link + "')\"");
-                }
-            }
-            m1.appendTail(intermediate2);
-        }
+        StringBuilder page = new StringBuilder(len + 64);
+        encoding_service_DOCPAGE_HTML.recode(context, input, page, link_recoder, arguments);
+
+        LinkRecoder page_link_recoder = block_cache == null ? link_recoder : block_cache.getLinkRecoder(context, link_recoder);
 
         if (false == (link_recoder instanceof AbbreviationRecoder)) {
-            output.append(intermediate2);
+            appendOORLLinks(context, page, output, page_link_recoder);
             return output;
         }
-              
-        StringBuffer intermediate3 = new StringBuffer(len);
-        {
-            // [Concept:Actions emos.doclet,DocletToHTML.template,Encoding.java,DocletLinkRecoder.java,HTMLAction.template]
-
-            AbbreviationRecoder abbreviation_recoder = (AbbreviationRecoder) link_recoder;
-            Pattern abbreviation_pattern = abbreviation_recoder.getAbbreviationPattern(context);
-            Matcher m2 = abbreviation_pattern.matcher(intermediate2.toString());
-            boolean outside = true;
-            boolean warning = false;
-            while (m2.find()) {
+
+        // [Concept:Actions emos.doclet,DocletToHTML.template,Encoding.java,DocletLinkRecoder.java,HTMLAction.template]
+
+        AbbreviationRecoder abbreviation_recoder = abbreviation_cache == null ? (AbbreviationRecoder) link_recoder : abbreviation_cache.getAbbreviationRecoder(context, (AbbreviationRecoder) link_recoder);
+        appendOORLLinksAndAbbreviations(context, page, output, page_link_recoder, abbreviation_recoder);
+        return output;
+    }
+
+    /**
+       Replaces links and abbreviations in one pass over the page: both
+       patterns are searched side by side and the match which starts first
+       is taken, links first if both start at the same position.
+       Abbreviations within links are not expanded.
+     */
+    static protected void appendOORLLinksAndAbbreviations(CallContext context, CharSequence page, StringBuilder output, LinkRecoder link_recoder, AbbreviationRecoder abbreviation_recoder) {
+        if (link_recoder instanceof BatchLinkRecoder) {
+            LinkBatch batch = new LinkBatch((BatchLinkRecoder) link_recoder);
+            collectOORLLinks(context, page, batch);
+            link_recoder = batch.resolve(context);
+        }
+
+        Matcher m1 = oorl_pattern.matcher(page);
+        Matcher m2 = abbreviation_recoder.getAbbreviationPattern(context).matcher(page);
+        boolean link_found         = m1.find();
+        boolean abbreviation_found = m2.find();
+        int last = 0;
+        while (link_found || abbreviation_found) {
+            if (link_found && (abbreviation_found == false || m1.start() <= m2.start())) {
+                output.append(page, last, m1.start());
+                appendOORLLink(context, m1.group(1), output, link_recoder);
+                last = m1.end();
+                link_found = m1.find();
+            } else {
                 String abbreviation = m2.group(0);
                 String recoded_abbreviation = abbreviation_recoder.recodeAbbreviation(context, abbreviation, null);
-                m2.appendReplacement(intermediate3, "");
+                output.append(page, last, m2.start());
                 if (recoded_abbreviation != null) {
-                    intermediate3.append(recoded_abbreviation);
+                    output.append(recoded_abbreviation);
                 } else {
-                    intermediate3.append("<div><b>Invalid Abbreviation: </b>" + recode_UTF8_XML(context, abbreviation) + "</div>");
+                    output.append("<div><b>Invalid Abbreviation: </b>").append(recode_UTF8_XML(context, abbreviation)).append("</div>");
                 }
+                last = m2.end();
+                abbreviation_found = m2.find();
             }
-            m2.appendTail(intermediate3);
+            // matches overlapping the replaced text are searched again behind it
+            if (link_found && m1.start() < last) { link_found = m1.find(last); }
+            if (abbreviation_found && m2.start() < last) { abbreviation_found = m2.find(last); }
         }
+        output.append(page, last, page.length());
+    }
 
-        output.append(intermediate3);
-        return output;
+    static protected void appendOORLLinks(CallContext context, CharSequence page, StringBuilder output, LinkRecoder link_recoder) {
+        if (link_recoder instanceof BatchLinkRecoder) {
+            LinkBatch batch = new LinkBatch((BatchLinkRecoder) link_recoder);
+            collectOORLLinks(context, page, batch);
+            link_recoder = batch.resolve(context);
+        }
+
+        Matcher m1 = oorl_pattern.matcher(page);
+        int last = 0;
+        while (m1.find()) {
+            output.append(page, last, m1.start());
+            appendOORLLink(context, m1.group(1), output, link_recoder);
+            last = m1.end();
+        }
+        output.append(page, last, page.length());
+    }
+
+    static protected void appendOORLLink(CallContext context, String link, StringBuilder output, LinkRecoder link_recoder) {
+        String recoded_link = link_recoder.recode(context, link, null);
+        if (recoded_link != null) {
+            output.append('"').append(recoded_link).append('"');
+        } else {
+            output.append("\"javascript:alert('Invalid Link: ").append(link).append("')\"");
+        }
+    }
+
+    static protected void collectOORLLinks(CallContext context, CharSequence page, LinkBatch batch) {
+        Matcher m1 = oorl_pattern.matcher(page);
+        while (m1.find()) {
+            batch.add(context, m1.group(1), null);
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2645,7 +4067,28 @@ public enum Encoding {
     }
 
     static public String recode_DOCBOOK_WIKI(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return string.replaceAll("(<para[^>]*>)|(</para>)","").replaceAll("<(synopsis|code)[^>]*>","§(code§)").replaceAll("</(synopsis|code)>","§(/code§)").replaceAll("<emphasis[^>]*>","'''").replaceAll("</emphasis>","'''").replaceAll("&","&amp;").replaceAll(">","&gt;").replaceAll("<","&lt;").replaceAll("§\\(","<").replaceAll("§\\)",">").replaceAll("\n( *)","\n").replaceFirst("^ *","");
+        return recode_DOCBOOK_WIKI(context, string, null, recoding_target_context).toString();
+    }
+
+    static public StringBuilder recode_DOCBOOK_WIKI(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        output = prepareOutput(context, output, input.length() + 16);
+        int mark = output.length();
+        if (DocBookTokenizer.tokenize(input, DocBookTokenizer.WIKI_RULES, new DocBookTokenizer.WikiSink(output)) == false) {
+            output.setLength(mark);
+            output.append(recode_DOCBOOK_WIKI_regexp(context, input.toString()));
+        }
+        return output;
+    }
+
+    // the former implementation, used for input the tokenizer rejects
+    static protected String recode_DOCBOOK_WIKI_regexp(CallContext context, String string) {
+        return recode_DOCBOOK_WIKI_regexp(context, string, false);
+    }
+
+    // continued: the string is the rest of a document, see DocBookTransducer
+    static protected String recode_DOCBOOK_WIKI_regexp(CallContext context, String string, boolean continued) {
+        string = string.replaceAll("(<para[^>]*>)|(</para>)","").replaceAll("<(synopsis|code)[^>]*>","§(code§)").replaceAll("</(synopsis|code)>","§(/code§)").replaceAll("<emphasis[^>]*>","'''").replaceAll("</emphasis>","'''").replaceAll("&","&amp;").replaceAll(">","&gt;").replaceAll("<","&lt;").replaceAll("§\\(","<").replaceAll("§\\)",">").replaceAll("\n( *)","\n");
+        return continued ? string : string.replaceFirst("^ *","");
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2655,7 +4098,139 @@ public enum Encoding {
     }
 
     static public String recode_DOCBOOK_JAVA(CallContext context, String string, RecodingTargetContext recoding_target_context) {
-        return string.replaceAll("<para[^>]*>","").replaceAll("</para>","\n\n").replaceAll("<(synopsis|code)[^>]*>","'").replaceAll("</(synopsis|code)>","'").replaceAll("</?(literal|informaltable|tgroup|tbody|simplelist|member)[^>]*>","").replaceAll("<entry>","").replaceAll("</entry>[ \n]*</row>","</row>").replaceAll("</row>[ \n]*<row>","</row>").replaceAll("[ \n]*(<row>|</row>)[ \n]*","\n=========================================\n").replaceAll("[ \n]*</entry>[ \n]*","\n  -------------------------------------  \n").replaceAll("<emphasis[^>]*>","*").replaceAll("</emphasis>","*").replaceAll("\n( *)","\n").replaceFirst("^[\n ]*","").replaceFirst("[\n ]*$","").replaceAll(" *\n *(\n *)+","\n\n").replaceAll("\n","\\\\n").replaceAll("\"","\\\\\"");
+        return recode_DOCBOOK_JAVA(context, string, null, recoding_target_context).toString();
+    }
+
+    static public StringBuilder recode_DOCBOOK_JAVA(CallContext context, CharSequence input, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        output = prepareOutput(context, output, input.length() + 16);
+        int mark = output.length();
+        if (DocBookTokenizer.tokenize(input, DocBookTokenizer.JAVA_RULES, new DocBookTokenizer.JavaTableSink(new DocBookTokenizer.JavaTextSink(output))) == false) {
+            output.setLength(mark);
+            output.append(recode_DOCBOOK_JAVA_regexp(context, input.toString()));
+        }
+        return output;
+    }
+
+    // the former implementation, used for input the tokenizer rejects
+    static protected String recode_DOCBOOK_JAVA_regexp(CallContext context, String string) {
+        return recode_DOCBOOK_JAVA_regexp(context, string, false);
+    }
+
+    // continued: the string is the rest of a document, see DocBookTransducer
+    static protected String recode_DOCBOOK_JAVA_regexp(CallContext context, String string, boolean continued) {
+        string = string.replaceAll("<para[^>]*>","").replaceAll("</para>","\n\n").replaceAll("<(synopsis|code)[^>]*>","'").replaceAll("</(synopsis|code)>","'").replaceAll("</?(literal|informaltable|tgroup|tbody|simplelist|member)[^>]*>","").replaceAll("<entry>","").replaceAll("</entry>[ \n]*</row>","</row>").replaceAll("</row>[ \n]*<row>","</row>").replaceAll("[ \n]*(<row>|</row>)[ \n]*","\n=========================================\n").replaceAll("[ \n]*</entry>[ \n]*","\n  -------------------------------------  \n").replaceAll("<emphasis[^>]*>","*").replaceAll("</emphasis>","*").replaceAll("\n( *)","\n");
+        if (continued == false) {
+            string = string.replaceFirst("^[\n ]*","");
+        }
+        return string.replaceFirst("[\n ]*$","").replaceAll(" *\n *(\n *)+","\n\n").replaceAll("\n","\\\\n").replaceAll("\"","\\\\\"");
+    }
+
+    /**
+       Streaming variant of the DocBook recodings to HTML (without
+       links), HTMLPRE, WIKI and JAVA.
+
+       The input is recoded in segments, which end after an ASCII letter
+       or digit and which the tokenizer accepts as partial input; none of
+       the former regular expressions matches across such an end, so the
+       result is the same as for the whole document, even if the
+       tokenizer rejects a later part of it. Segments are cut off once
+       BLOCK_SIZE chars are collected, after a failed try once twice as
+       many are.
+     */
+    static protected class DocBookTransducer extends RecodingTransducer {
+        protected Encoding                target;
+        protected Integer                 heading_depth;
+        protected DocBookTokenizer.Rule[] rules;
+        protected StringBuilder           pending;
+        protected StringBuilder           recoded;
+        protected boolean                 continued;
+        protected int                     limit;
+
+        public DocBookTransducer (CallContext context, Output output, Encoding target, Integer heading_depth) {
+            super(context, output);
+            this.target        = target;
+            this.heading_depth = heading_depth;
+            this.rules         =   target == HTML    ? DocBookTokenizer.getHTMLRules(heading_depth)
+                                 : target == HTMLPRE ? DocBookTokenizer.HTMLPRE_RULES
+                                 : target == WIKI    ? DocBookTokenizer.WIKI_RULES
+                                 :                     DocBookTokenizer.JAVA_RULES;
+            this.pending       = new StringBuilder();
+            this.recoded       = new StringBuilder();
+            this.limit         = BLOCK_SIZE;
+        }
+
+        public void put(CallContext context, char c) {
+            this.pending.append(c);
+            if (this.pending.length() >= this.limit) { this.cut(context); }
+        }
+
+        public void put(CallContext context, char[] buffer, int offset, int length) {
+            this.pending.append(buffer, offset, length);
+            if (this.pending.length() >= this.limit) { this.cut(context); }
+        }
+
+        protected void cut(CallContext context) {
+            int end = findSegmentEnd(this.pending);
+            if (end != -1 && this.recode(context, this.pending.substring(0, end), true)) {
+                this.pending.delete(0, end);
+                this.limit = BLOCK_SIZE;
+            } else {
+                this.limit = 2 * this.pending.length();
+            }
+        }
+
+        // after the last ASCII letter or digit, which is not within a tag
+        static protected int findSegmentEnd(CharSequence input) {
+            int i = input.length() - 1;
+            while (i >= 0) {
+                char c = input.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                    int j = i - 1;
+                    while (j >= 0 && (c = input.charAt(j)) != '<' && c != '>') { j--; }
+                    if (j == -1 || c == '>') { return i + 1; }
+                    i = j;
+                }
+                i--;
+            }
+            return -1;
+        }
+
+        protected boolean recode(CallContext context, String segment, boolean partial) {
+            StringBuilder recoded = this.recoded;
+            recoded.setLength(0);
+            DocBookTokenizer.Sink sink;
+            if (this.target == HTML) {
+                sink = new DocBookTokenizer.TextSink(recoded);
+            } else if (this.target == HTMLPRE) {
+                sink = new DocBookTokenizer.HTMLPreSink(recoded);
+            } else if (this.target == WIKI) {
+                DocBookTokenizer.WikiSink wiki = new DocBookTokenizer.WikiSink(recoded);
+                wiki.skip_blanks = (this.continued == false);
+                sink = wiki;
+            } else {
+                DocBookTokenizer.JavaTextSink text = new DocBookTokenizer.JavaTextSink(recoded);
+                text.started = this.continued;
+                sink = new DocBookTokenizer.JavaTableSink(text);
+            }
+            if (DocBookTokenizer.tokenize(segment, this.rules, sink, partial) == false) {
+                if (partial) { return false; }
+                recoded.setLength(0);
+                recoded.append(  this.target == HTML    ? recode_DOCBOOK_HTML_regexp(context, segment, this.heading_depth)
+                               : this.target == HTMLPRE ? recode_DOCBOOK_HTMLPRE_regexp(context, segment)
+                               : this.target == WIKI    ? recode_DOCBOOK_WIKI_regexp(context, segment, this.continued)
+                               :                          recode_DOCBOOK_JAVA_regexp(context, segment, this.continued));
+            }
+            this.output.append(context, recoded);
+            this.continued = true;
+            return true;
+        }
+
+        public void finish(CallContext context) {
+            this.recode(context, this.pending.toString(), false);
+            this.pending.setLength(0);
+            this.continued = false;
+            this.limit     = BLOCK_SIZE;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2665,8 +4240,32 @@ public enum Encoding {
     }
 
     static public String recode_INTEGER_FORMAT(CallContext context, String string, RecodingTargetContext recoding_target_context, String format) {
-        int i = Integer.parseInt(string.replaceFirst("^ *([0-9]+) *$", "$1"));
-        return String.format(format, i);
+        return CompiledFormat.get(context, format).format(context, parseFormatInteger(context, string));
+    }
+
+    static public String recode_INTEGER_FORMAT(CallContext context, int value, String format) {
+        return CompiledFormat.get(context, format).format(context, value);
+    }
+
+    static public String recode_INTEGER_FORMAT(CallContext context, long value, String format) {
+        return CompiledFormat.get(context, format).format(context, value);
+    }
+
+    /**
+       Parses the integer, blanks around it are ignored if it consists
+       of digits only.
+     */
+    static protected int parseFormatInteger(CallContext context, String string) {
+        int start = 0;
+        int end   = string.length();
+        while (start < end && string.charAt(start) == ' ') { start++; }
+        while (end > start && string.charAt(end - 1) == ' ') { end--; }
+        if (start == 0 && end == string.length()) { return Integer.parseInt(string); }
+        for (int i=start; i<end; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') { return Integer.parseInt(string); }
+        }
+        return Integer.parseInt(start == end ? string : string.substring(start, end));
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2676,8 +4275,20 @@ public enum Encoding {
     }
 
     static public String recode_FLOAT_FORMAT(CallContext context, String string, RecodingTargetContext recoding_target_context, String format) {
-        float f = Float.parseFloat(string.replaceFirst("^ *([0-9A-Za-z.+-]+) *$", "$1"));
-        return String.format(format, f);
+        return CompiledFormat.get(context, format).format(context, parseFormatFloat(context, string));
+    }
+
+    static public String recode_FLOAT_FORMAT(CallContext context, float value, String format) {
+        return CompiledFormat.get(context, format).format(context, value);
+    }
+
+    static public String recode_FLOAT_FORMAT(CallContext context, double value, String format) {
+        return CompiledFormat.get(context, format).format(context, value);
+    }
+
+    // Float.parseFloat ignores surrounding whitespace itself
+    static protected float parseFormatFloat(CallContext context, String string) {
+        return Float.parseFloat(string);
     }
 
     // ---------------------------------------------------------------------------------------------------
@@ -2687,6 +4298,6 @@ public enum Encoding {
     }
 
     static public String recode_UTF8_FORMAT(CallContext context, String string, RecodingTargetContext recoding_target_context, String format) {
-        return String.format(format, string);
+        return CompiledFormat.get(context, format).format(context, string);
     }
 }
@@ -53,17 +53,19 @@ public class EncodingStep {
                 if (pos == -1) { pos = encstep.indexOf('['); }
                 if (pos != -1) {
                     int l = encstep.length();
-                    Character last = encstep.charAt(l - 1);
+                    char last = encstep.charAt(l - 1);
                     if (last == ')' || last == ']') {
                         String[] os = encstep.substring(pos+1, l - 1).split(",",-1);
                         options = new Object[os.length];
                         for (int i=0; i<os.length; i++) {
-                            if (os[i].matches("[0-9]+")) {
-                                options[i] = Integer.parseInt(os[i]);
-                            } else if (os[i].matches("\".*\"")) {
-                                options[i] = os[i].substring(1,os[i].length()-1);
+                            String o = os[i];
+                            int ol = o.length();
+                            if (isDigits(o)) {
+                                options[i] = Integer.parseInt(o);
+                            } else if (ol >= 2 && o.charAt(0) == '"' && o.charAt(ol - 1) == '"') {
+                                options[i] = o.substring(1, ol - 1);
                             } else {
-                                options[i] = os[i];
+                                options[i] = o;
                             }
                         }
                     }
@@ -77,6 +79,16 @@ public class EncodingStep {
         return steps;
     }
 
+    static protected boolean isDigits(String string) {
+        int l = string.length();
+        if (l == 0) { return false; }
+        for (int i=0; i<l; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') { return false; }
+        }
+        return true;
+    }
+
     public EncodingStep (CallContext context, Encoding encoding, Object... options) {
         this.encoding = encoding;
         this.options = options;
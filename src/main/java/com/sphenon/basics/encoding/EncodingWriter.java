@@ -15,24 +15,59 @@ package com.sphenon.basics.encoding;
 *****************************************************************************/
 
 import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
 
 import java.io.Writer;
 import java.io.IOException;
 
+/**
+   Writer which recodes everything written according to its encoding
+   steps before passing it on; each write is recoded on its own.
+
+   The transducers of the pipeline are kept for all writes, recoded
+   output is collected in an internal buffer and written to the wrapped
+   writer in chunks of about buffer_size chars, as well as on flush and
+   close. Optionally, input can be coalesced, too: then written chars
+   are collected and recoded together once buffer_size is reached or on
+   flush. This is considerably faster for many tiny writes, but recoders
+   which depend on their input boundaries (like ABBREV or FIXED) see the
+   coalesced chunks instead of single writes.
+ */
 public class EncodingWriter extends Writer {
 
     protected Writer                writer;
     protected CallContext           context;
     protected EncodingStep[]        encoding_steps;
+    protected RecodingPipeline      pipeline;
+    protected RecodingTransducer[]  transducers;
     protected RecodingTargetContext recoding_target_context;
+    protected int                   buffer_size;
+    protected StringBuilder         output;
+    protected StringBuilder         input;
+    protected boolean               coalesce;
+    protected char[]                chars;
+
+    static public final int DEFAULT_BUFFER_SIZE = 8192;
 
     public EncodingWriter (CallContext context, Writer writer) {
+        this(context, writer, DEFAULT_BUFFER_SIZE);
+    }
+
+    public EncodingWriter (CallContext context, Writer writer, int buffer_size) {
         this.context                 = context;
         this.writer                  = writer;
         this.recoding_target_context = new RecodingTargetContext(context);
+        this.buffer_size             = buffer_size > 0 ? buffer_size : DEFAULT_BUFFER_SIZE;
     }
 
     public void setEncodingSteps(CallContext context, EncodingStep[] encoding_steps) {
+        try {
+            this.flushBuffers(context);
+        } catch (IOException ioe) {
+            CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not flush encoding writer");
+            throw (ExceptionEnvironmentFailure) null; // compiler insists
+        }
         this.encoding_steps = encoding_steps;
         EncodingStep previous = null;
         boolean necessary = false;
@@ -49,84 +84,215 @@ public class EncodingWriter extends Writer {
                 this.encoding_steps = null;
             }
         }
+        this.pipeline    = this.encoding_steps == null ? null : Encoding.getRecodingPipeline(context, this.encoding_steps);
+        this.transducers = null;
     }
 
     public void setContext(CallContext context) {
         this.context = context;
     }
 
-    public Writer append(char c) throws IOException {
-        if (this.encoding_steps == null) {
-            this.writer.append(c);
-        } else {
-            this.writer.append(Encoding.recode(context, c, this.encoding_steps, this.recoding_target_context));
+    public boolean getCoalesce (CallContext context) {
+        return this.coalesce;
+    }
+
+    public void setCoalesce (CallContext context, boolean coalesce) {
+        if (this.coalesce && ! coalesce) {
+            this.flushInput(context);
+        }
+        this.coalesce = coalesce;
+    }
+
+    protected RecodingTransducer getTransducer(CallContext context) {
+        if (this.transducers == null) {
+            if (this.output == null) { this.output = new StringBuilder(this.buffer_size + (this.buffer_size >> 2)); }
+            this.transducers = this.pipeline.getTransducers(context, this.output, this.recoding_target_context);
+        }
+        return this.transducers[0];
+    }
+
+    protected char[] getChars() {
+        if (this.chars == null) { this.chars = new char[this.buffer_size < 4096 ? this.buffer_size : 4096]; }
+        return this.chars;
+    }
+
+    protected void finishWrite(CallContext context) throws IOException {
+        for (RecodingTransducer transducer : this.transducers) {
+            transducer.finish(context);
+        }
+        if (this.output.length() >= this.buffer_size) {
+            this.flushOutput();
+        }
+    }
+
+    protected void recode(char[] buffer, int offset, int length) throws IOException {
+        if (this.coalesce) {
+            if (this.input == null) { this.input = new StringBuilder(this.buffer_size); }
+            this.input.append(buffer, offset, length);
+            if (this.input.length() >= this.buffer_size) {
+                this.flushBuffers(this.context);
+            }
+            return;
+        }
+        try {
+            this.getTransducer(this.context).put(this.context, buffer, offset, length);
+            this.finishWrite(this.context);
+        } catch (RuntimeException re) {
+            this.transducers = null; // state of the failed write may be pending
+            throw re;
+        }
+    }
+
+    protected void recode(CharSequence csq, int start, int end) throws IOException {
+        if (this.coalesce) {
+            if (this.input == null) { this.input = new StringBuilder(this.buffer_size); }
+            this.input.append(csq, start, end);
+            if (this.input.length() >= this.buffer_size) {
+                this.flushBuffers(this.context);
+            }
+            return;
+        }
+        try {
+            this.put(this.context, csq, start, end);
+            this.finishWrite(this.context);
+        } catch (RuntimeException re) {
+            this.transducers = null; // state of the failed write may be pending
+            throw re;
+        }
+    }
+
+    // strings and builders are copied block by block into a reused buffer
+    protected void put(CallContext context, CharSequence csq, int start, int end) {
+        RecodingTransducer transducer = this.getTransducer(context);
+        if (csq instanceof String == false && csq instanceof StringBuilder == false) {
+            transducer.append(csq, start, end);
+            return;
+        }
+        char[] chars = this.getChars();
+        while (start < end) {
+            int n = end - start < chars.length ? end - start : chars.length;
+            if (csq instanceof String) {
+                ((String) csq).getChars(start, start + n, chars, 0);
+            } else {
+                ((StringBuilder) csq).getChars(start, start + n, chars, 0);
+            }
+            transducer.put(context, chars, 0, n);
+            start += n;
+        }
+    }
+
+    protected void flushInput(CallContext context) {
+        if (this.input == null || this.input.length() == 0) { return; }
+        try {
+            this.put(context, this.input, 0, this.input.length());
+            for (RecodingTransducer transducer : this.transducers) {
+                transducer.finish(context);
+            }
+        } catch (RuntimeException re) {
+            this.transducers = null; // state of the failed write may be pending
+            throw re;
+        } finally {
+            this.input.setLength(0);
         }
+    }
+
+    protected void flushOutput() throws IOException {
+        if (this.output == null || this.output.length() == 0) { return; }
+        this.writer.append(this.output);
+        this.output.setLength(0);
+    }
+
+    protected void flushBuffers(CallContext context) throws IOException {
+        this.flushInput(context);
+        this.flushOutput();
+    }
+
+    public Writer append(char c) throws IOException {
+        this.write(c);
         return this;
     }
 
     public Writer append(CharSequence csq) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.append(csq);
         } else {
-            this.writer.append(Encoding.recode(context, csq, this.encoding_steps, this.recoding_target_context));
+            if (csq == null) { csq = "null"; }
+            this.recode(csq, 0, csq.length());
         }
         return this;
     }
 
     public Writer append(CharSequence csq, int start, int end) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.append(csq, start, end);
         } else {
-            this.writer.append(Encoding.recode(context, csq.subSequence(start, end), this.encoding_steps, this.recoding_target_context));
+            if (csq == null) { csq = "null"; }
+            this.recode(csq, start, end);
         }
         return this;
     }
 
     public void close() throws IOException {
+        this.flush();
         this.writer.close();
     }
 
     public void flush() throws IOException {
+        this.flushBuffers(this.context);
         this.writer.flush();
     }
 
     public void write(char[] cbuf) throws IOException {
-        if (this.encoding_steps == null) {
-            this.writer.write(cbuf);
-        } else {
-            this.writer.append(Encoding.recode(context, new String(cbuf), this.encoding_steps, this.recoding_target_context));
-        }
+        this.write(cbuf, 0, cbuf.length);
     }
 
     public void write(char[] cbuf, int off, int len) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.write(cbuf, off, len);
         } else {
-            this.writer.append(Encoding.recode(context, new String(cbuf, off, len), this.encoding_steps, this.recoding_target_context));
+            this.recode(cbuf, off, len);
         }
     }
 
     public void write(int c) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.write(c);
+        } else if (this.coalesce) {
+            if (this.input == null) { this.input = new StringBuilder(this.buffer_size); }
+            this.input.append((char) c);
+            if (this.input.length() >= this.buffer_size) {
+                this.flushBuffers(this.context);
+            }
         } else {
-            this.writer.append(Encoding.recode(context, (char) c, this.encoding_steps, this.recoding_target_context));
+            try {
+                this.getTransducer(this.context).put(this.context, (char) c);
+                this.finishWrite(this.context);
+            } catch (RuntimeException re) {
+                this.transducers = null; // state of the failed write may be pending
+                throw re;
+            }
         }
     }
 
     public void write(String str) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.write(str);
         } else {
-            this.writer.append(Encoding.recode(context, str, this.encoding_steps, this.recoding_target_context));
+            this.recode(str, 0, str.length());
         }
     }
 
     public void write(String str, int off, int len) throws IOException {
-        if (this.encoding_steps == null) {
+        if (this.pipeline == null) {
+            this.flushBuffers(this.context);
             this.writer.write(str, off, len);
         } else {
-            this.writer.append(Encoding.recode(context, str.substring(off, off+len), this.encoding_steps, this.recoding_target_context));
+            this.recode(str, off, off + len);
         }
     }
 }
@@ -0,0 +1,181 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+/**
+   Table driven escaping of single chars, shared by all simple escaping
+   encodings.
+
+   ASCII chars are looked up in a replacement table, all other chars
+   are escaped as \\uXXXX if they are within one of the configured
+   ranges. Escapes are written directly to the output, without
+   temporary Strings.
+
+   Tables are set up once and immutable afterwards, so they can be
+   shared between threads.
+ */
+public class EscapeTable {
+
+    protected char[][] replacements;
+    protected int[]    ranges;
+    protected char[]   digits;
+
+    static protected final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+    static protected final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+
+    public EscapeTable (boolean lower_case_hex) {
+        this.replacements = new char[128][];
+        this.ranges       = new int[0];
+        this.digits       = lower_case_hex ? LOWER_DIGITS : UPPER_DIGITS;
+    }
+
+    /**
+       Escapes the given ASCII char with the replacement.
+     */
+    public EscapeTable escape(char c, String replacement) {
+        this.replacements[c] = replacement.toCharArray();
+        return this;
+    }
+
+    /**
+       Escapes all chars from (inclusive) to (exclusive) as \\uXXXX,
+       unless an explicit replacement is given for them.
+     */
+    public EscapeTable escapeUnicode(int from, int to) {
+        for (int c=from; c<to && c<128; c++) {
+            if (this.replacements[c] == null) {
+                this.replacements[c] = this.unicode((char) c, new char[6]);
+            }
+        }
+        if (to > 128) {
+            int[] ranges = new int[this.ranges.length + 2];
+            System.arraycopy(this.ranges, 0, ranges, 0, this.ranges.length);
+            ranges[this.ranges.length]     = from < 128 ? 128 : from;
+            ranges[this.ranges.length + 1] = to;
+            this.ranges = ranges;
+        }
+        return this;
+    }
+
+    protected char[] unicode(char c, char[] buffer) {
+        buffer[0] = '\\';
+        buffer[1] = 'u';
+        buffer[2] = this.digits[(c >> 12) & 0xF];
+        buffer[3] = this.digits[(c >>  8) & 0xF];
+        buffer[4] = this.digits[(c >>  4) & 0xF];
+        buffer[5] = this.digits[ c        & 0xF];
+        return buffer;
+    }
+
+    public boolean isPlain(char c) {
+        if (c < 128) { return this.replacements[c] == null; }
+        int[] ranges = this.ranges;
+        for (int r=0; r<ranges.length; r+=2) {
+            if (c >= ranges[r] && c < ranges[r+1]) { return false; }
+        }
+        return true;
+    }
+
+    /**
+       Returns the index of the first char at or after start which needs
+       to be escaped, or end if there is none.
+     */
+    public int scan(CharSequence string, int start, int end) {
+        int i = start;
+        while (i < end && this.isPlain(string.charAt(i))) { i++; }
+        return i;
+    }
+
+    public int scan(char[] buffer, int start, int end) {
+        int i = start;
+        while (i < end && this.isPlain(buffer[i])) { i++; }
+        return i;
+    }
+
+    /**
+       Returns the string itself if nothing needs to be escaped.
+     */
+    public String escape(String string) {
+        if (string == null) { return null; }
+        int len   = string.length();
+        int first = this.scan(string, 0, len);
+        if (first == len) { return string; }
+        StringBuilder output = new StringBuilder(len + 16);
+        output.append(string, 0, first);
+        this.escape(string, first, len, output);
+        return output.toString();
+    }
+
+    public StringBuilder escape(CharSequence string, int start, int end, StringBuilder output) {
+        char[] unicode = null;
+        while (start < end) {
+            int i = this.scan(string, start, end);
+            if (i > start) { output.append(string, start, i); }
+            if (i == end) { break; }
+            char c = string.charAt(i);
+            if (c < 128) {
+                output.append(this.replacements[c]);
+            } else {
+                if (unicode == null) { unicode = new char[6]; }
+                output.append(this.unicode(c, unicode));
+            }
+            start = i + 1;
+        }
+        return output;
+    }
+
+    public void escape(CallContext context, char c, Encoding.Output output) {
+        if (c < 128) {
+            char[] replacement = this.replacements[c];
+            if (replacement == null) {
+                output.append(context, c);
+            } else {
+                output.append(context, replacement, 0, replacement.length);
+            }
+        } else if (this.isPlain(c)) {
+            output.append(context, c);
+        } else {
+            // written char by char, tables are shared and have no buffer of their own
+            output.append(context, '\\');
+            output.append(context, 'u');
+            output.append(context, this.digits[(c >> 12) & 0xF]);
+            output.append(context, this.digits[(c >>  8) & 0xF]);
+            output.append(context, this.digits[(c >>  4) & 0xF]);
+            output.append(context, this.digits[ c        & 0xF]);
+        }
+    }
+
+    public void escape(CallContext context, char[] buffer, int offset, int length, Encoding.Output output) {
+        int    end     = offset + length;
+        int    start   = offset;
+        char[] unicode = null;
+        while (start < end) {
+            int i = this.scan(buffer, start, end);
+            if (i > start) { output.append(context, buffer, start, i - start); }
+            if (i == end) { break; }
+            char c = buffer[i];
+            if (c < 128) {
+                char[] replacement = this.replacements[c];
+                output.append(context, replacement, 0, replacement.length);
+            } else {
+                if (unicode == null) { unicode = new char[6]; }
+                output.append(context, this.unicode(c, unicode), 0, 6);
+            }
+            start = i + 1;
+        }
+    }
+}
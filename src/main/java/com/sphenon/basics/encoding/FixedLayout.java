@@ -0,0 +1,128 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.util.regex.Pattern;
+import java.util.regex.Matcher;
+
+/**
+   The options of a FIXED recoding, prepared once: justification,
+   truncation patterns and a run of fill characters which is copied in
+   bulk.
+
+   Justification is one of "l", "r" or "c" (case insensitive); with any
+   other value, strings are neither padded nor trimmed, and too long
+   strings are cut at the left.
+ */
+public class FixedLayout {
+
+    static public enum Justification { LEFT, RIGHT, CENTER, NONE };
+
+    static public Justification getJustification(CallContext context, String justification) {
+        if (justification != null && justification.length() == 1) {
+            switch (justification.charAt(0)) {
+                case 'l': case 'L': return Justification.LEFT;
+                case 'r': case 'R': return Justification.RIGHT;
+                case 'c': case 'C': return Justification.CENTER;
+            }
+        }
+        return Justification.NONE;
+    }
+
+    static protected final int MAXIMUM_RUN = 256;
+
+    protected final int           length;
+    protected final int           max_length;
+    protected final Justification justification;
+    protected final int           fill_length;
+    protected final char[]        fill_run;
+    protected final Pattern       leading;
+    protected final Pattern       trailing;
+
+    public FixedLayout (CallContext context, int length, String fill_character, String justification, int max_length, String truncate_pattern) {
+        this.length        = length;
+        this.max_length    = max_length == 0 ? length : max_length;
+        this.justification = getJustification(context, justification);
+        this.fill_length   = fill_character.length();
+
+        int count = length < MAXIMUM_RUN ? length : MAXIMUM_RUN;
+        if (count < 1) { count = 1; }
+        this.fill_run = new char[count * this.fill_length];
+        for (int i=0; i<count; i++) {
+            fill_character.getChars(0, this.fill_length, this.fill_run, i * this.fill_length);
+        }
+
+        boolean truncate = truncate_pattern != null && truncate_pattern.isEmpty() == false;
+        this.leading  = truncate && (this.justification == Justification.RIGHT || this.justification == Justification.CENTER)
+                        ? RegexpReplacement.getPattern(context, "^(" + truncate_pattern + ")+") : null;
+        this.trailing = truncate && (this.justification == Justification.LEFT || this.justification == Justification.CENTER)
+                        ? RegexpReplacement.getPattern(context, "(" + truncate_pattern + ")+$") : null;
+    }
+
+    public String apply(CallContext context, String string) {
+        if (this.leading != null) {
+            string = removeFirst(string, this.leading);
+        }
+        if (this.trailing != null) {
+            string = removeFirst(string, this.trailing);
+        }
+
+        int len = string.length();
+        if (len > this.max_length) {
+            if (this.justification == Justification.LEFT || this.justification == Justification.CENTER) {
+                return string.substring(0, this.max_length);
+            } else {
+                return string.substring(len - this.max_length, len);
+            }
+        }
+        int diff = this.length - len;
+        if (diff <= 0 || this.fill_length == 0) { return string; }
+
+        int before, after;
+        switch (this.justification) {
+            case LEFT   : before = 0;        after = diff;                    break;
+            case RIGHT  : before = diff;     after = 0;                       break;
+            case CENTER : before = diff / 2; after = (diff / 2) + (diff % 2); break;
+            default     : return string;
+        }
+
+        char[] result = new char[(before + after) * this.fill_length + len];
+        int position = this.fill(result, 0, before);
+        string.getChars(0, len, result, position);
+        this.fill(result, position + len, after);
+        return new String(result);
+    }
+
+    protected int fill(char[] result, int position, int count) {
+        int remaining = count * this.fill_length;
+        while (remaining > 0) {
+            int n = remaining < this.fill_run.length ? remaining : this.fill_run.length;
+            System.arraycopy(this.fill_run, 0, result, position, n);
+            position  += n;
+            remaining -= n;
+        }
+        return position;
+    }
+
+    static protected String removeFirst(String string, Pattern pattern) {
+        Matcher matcher = pattern.matcher(string);
+        if (matcher.find() == false || matcher.start() == matcher.end()) { return string; }
+        int start = matcher.start();
+        int end   = matcher.end();
+        return new StringBuilder(string.length() - (end - start)).append(string, 0, start).append(string, end, string.length()).toString();
+    }
+}
@@ -0,0 +1,249 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+/**
+   Decoder for percent encoded text (URI and URIFORM), working as a
+   state machine on chars or bytes.
+
+   Consecutive %xx escapes are collected as bytes and decoded as UTF-8
+   in one go; byte sequences which are not valid UTF-8 are decoded as
+   ISO-8859-1 byte by byte instead. In URI mode, %{hex} denotes a single
+   char (or code point) by its hex value, in form mode '+' denotes a
+   blank. Malformed escapes are passed through unchanged.
+
+   With another escape char, the same decoder handles VSA (_xx).
+ */
+public class PercentDecoder extends RecodingTransducer {
+
+    static protected final int PLAIN   = 0;
+    static protected final int PERCENT = 1;
+    static protected final int HEX     = 2;
+    static protected final int BRACE   = 3;
+
+    protected char    escape;
+    protected boolean braces;
+    protected boolean plus;
+    protected int     state;
+    protected int     value;
+    protected int     digits;
+    protected char[]  literal;
+    protected byte[]  bytes;
+    protected int     byte_count;
+    protected char[]  chars;
+
+    public PercentDecoder (CallContext context, Encoding.Output output, boolean form) {
+        this(context, output, '%', form == false, form);
+    }
+
+    public PercentDecoder (CallContext context, Encoding.Output output, char escape, boolean braces, boolean plus) {
+        super(context, output);
+        this.escape     = escape;
+        this.braces     = braces;
+        this.plus       = plus;
+        this.state      = PLAIN;
+        this.literal    = new char[10];
+        this.literal[0] = escape;
+        this.bytes      = new byte[64];
+        this.chars      = new char[64];
+    }
+
+    static protected int hexValue(int c) {
+        if (c >= '0' && c <= '9') { return c - '0'; }
+        if (c >= 'A' && c <= 'F') { return c - 'A' + 10; }
+        if (c >= 'a' && c <= 'f') { return c - 'a' + 10; }
+        return -1;
+    }
+
+    public void put(CallContext context, char c) {
+        this.put(context, c, false);
+    }
+
+    /**
+       Processes one input unit; if raw is true, it is a byte of the
+       UTF-8 encoded input which is not an ASCII char.
+     */
+    protected void put(CallContext context, int c, boolean raw) {
+        int h;
+        switch (this.state) {
+            case PERCENT:
+                if ((h = hexValue(c)) != -1) {
+                    this.value      = h;
+                    this.literal[1] = (char) c;
+                    this.state      = HEX;
+                    return;
+                }
+                if (c == '{' && this.braces) {
+                    this.value      = 0;
+                    this.digits     = 0;
+                    this.literal[1] = '{';
+                    this.state      = BRACE;
+                    return;
+                }
+                this.passLiteral(context, 1);
+                break;
+            case HEX:
+                if ((h = hexValue(c)) != -1) {
+                    this.addByte((this.value << 4) | h);
+                    this.state = PLAIN;
+                    return;
+                }
+                this.passLiteral(context, 2);
+                break;
+            case BRACE:
+                if (c == '}' && this.digits > 0 && Character.isValidCodePoint(this.value)) {
+                    this.flushBytes(context);
+                    if (this.value < 0x10000) {
+                        this.output.append(context, (char) this.value);
+                    } else {
+                        int n = Character.toChars(this.value, this.chars, 0);
+                        this.output.append(context, this.chars, 0, n);
+                    }
+                    this.state = PLAIN;
+                    return;
+                }
+                if ((h = hexValue(c)) != -1 && this.digits < 8) {
+                    this.value = (this.value << 4) | h;
+                    this.literal[2 + this.digits++] = (char) c;
+                    return;
+                }
+                this.passLiteral(context, 2 + this.digits);
+                break;
+        }
+
+        if (raw) {
+            this.addByte(c);
+            return;
+        }
+        if (c == this.escape) {
+            this.state = PERCENT;
+            return;
+        }
+        this.flushBytes(context);
+        this.output.append(context, (c == '+' && this.plus) ? ' ' : (char) c);
+    }
+
+    public void put(CallContext context, char[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i   = offset;
+        while (i < end) {
+            if (this.state == PLAIN && this.byte_count == 0) {
+                int start = i;
+                char c;
+                while (i < end && (c = buffer[i]) != this.escape && (c != '+' || this.plus == false)) { i++; }
+                if (i > start) {
+                    this.output.append(context, buffer, start, i - start);
+                    if (i == end) { return; }
+                }
+            }
+            this.put(context, buffer[i++], false);
+        }
+    }
+
+    /**
+       Feeds UTF-8 encoded input, e.g. a raw query string.
+     */
+    public void put(CallContext context, byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i=offset; i<end; i++) {
+            int b = buffer[i] & 0xFF;
+            this.put(context, b, b >= 0x80);
+        }
+    }
+
+    public void finish(CallContext context) {
+        switch (this.state) {
+            case PERCENT: this.passLiteral(context, 1); break;
+            case HEX    : this.passLiteral(context, 2); break;
+            case BRACE  : this.passLiteral(context, 2 + this.digits); break;
+        }
+        this.flushBytes(context);
+    }
+
+    protected void passLiteral(CallContext context, int length) {
+        this.flushBytes(context);
+        this.output.append(context, this.literal, 0, length);
+        this.state = PLAIN;
+    }
+
+    protected void addByte(int b) {
+        if (this.byte_count == this.bytes.length) {
+            byte[] bytes = new byte[this.bytes.length * 2];
+            System.arraycopy(this.bytes, 0, bytes, 0, this.byte_count);
+            this.bytes = bytes;
+        }
+        this.bytes[this.byte_count++] = (byte) b;
+    }
+
+    protected void flushBytes(CallContext context) {
+        int count = this.byte_count;
+        if (count == 0) { return; }
+        this.byte_count = 0;
+
+        if (this.chars.length < count) { this.chars = new char[count]; }
+        byte[] bytes = this.bytes;
+        char[] chars = this.chars;
+        int n = 0;
+        int i = 0;
+        while (i < count) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+                i++;
+                continue;
+            }
+            int length, cp, min;
+            if      (b >= 0xC2 && b <= 0xDF) { length = 2; cp = b & 0x1F; min = 0x80;    }
+            else if (b >= 0xE0 && b <= 0xEF) { length = 3; cp = b & 0x0F; min = 0x800;   }
+            else if (b >= 0xF0 && b <= 0xF4) { length = 4; cp = b & 0x07; min = 0x10000; }
+            else                             { length = 0; cp = 0;        min = 0;       }
+            int j = 1;
+            if (length > 0 && i + length <= count) {
+                for (; j < length; j++) {
+                    int cb = bytes[i + j] & 0xFF;
+                    if ((cb & 0xC0) != 0x80) { break; }
+                    cp = (cp << 6) | (cb & 0x3F);
+                }
+            }
+            if (   length == 0 || j != length
+                || cp < min || cp > 0x10FFFF
+                || (cp >= 0xD800 && cp <= 0xDFFF)) {
+                chars[n++] = (char) b;
+                i++;
+            } else if (cp < 0x10000) {
+                chars[n++] = (char) cp;
+                i += length;
+            } else {
+                chars[n++] = Character.highSurrogate(cp);
+                chars[n++] = Character.lowSurrogate(cp);
+                i += length;
+            }
+        }
+        this.output.append(context, chars, 0, n);
+    }
+
+    /**
+       Decodes percent encoded, UTF-8 encoded bytes.
+     */
+    static public String decode(CallContext context, byte[] bytes, int offset, int length, boolean form) {
+        Encoding.Output output = Encoding.prepareOutput(context, new StringBuilder(length), (CharSource) null, (RecodingTargetContext) null);
+        PercentDecoder decoder = new PercentDecoder(context, output, form);
+        decoder.put(context, bytes, offset, length);
+        decoder.finish(context);
+        return output.appendable.toString();
+    }
+}
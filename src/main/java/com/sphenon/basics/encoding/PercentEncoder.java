@@ -0,0 +1,238 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+/**
+   Encoder for percent encoded text (URI and URIFORM), the counterpart
+   of PercentDecoder.
+
+   Chars which need escaping are encoded as UTF-8 and written as %XX
+   triplets in a single pass. In URI mode, chars are escaped according
+   to Encoding.URICharCode (code 2 and above), lone surrogates are
+   written as %{XXXX}. In form mode, everything but alphanumerics and
+   ".-*_" is escaped, blanks become '+' and lone surrogates are encoded
+   as '?', like java.net.URLEncoder does.
+ */
+public class PercentEncoder extends RecodingTransducer {
+
+    static protected final char[]    DIGITS     = "0123456789ABCDEF".toCharArray();
+    static protected final boolean[] URI_PLAIN  = new boolean[128];
+    static protected final boolean[] FORM_PLAIN = new boolean[128];
+
+    static {
+        for (int c=0; c<128; c++) {
+            URI_PLAIN[c]  = Encoding.URICharCode[c] < 2;
+            FORM_PLAIN[c] =    (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                            || c == '.' || c == '-' || c == '*' || c == '_';
+        }
+    }
+
+    /**
+       Maximum number of output chars per input char.
+     */
+    static public final int MAXIMUM_EXPANSION = 9;
+
+    protected boolean   form;
+    protected boolean[] plain;
+    protected char      high;
+    protected char[]    pair;
+    protected char[]    escaped;
+
+    public PercentEncoder (CallContext context, Encoding.Output output, boolean form) {
+        super(context, output);
+        this.form  = form;
+        this.plain = form ? FORM_PLAIN : URI_PLAIN;
+        this.pair  = new char[2];
+    }
+
+    /**
+       Returns the index of the first char which needs to be escaped,
+       or end if there is none.
+     */
+    static public int scan(CharSequence string, int start, int end, boolean form) {
+        boolean[] plain = form ? FORM_PLAIN : URI_PLAIN;
+        char c;
+        while (start < end && (c = string.charAt(start)) < 128 && plain[c]) { start++; }
+        return start;
+    }
+
+    /**
+       Encodes the chars from start to end of in into out at position,
+       which has to provide room for MAXIMUM_EXPANSION chars per input
+       char. Surrogates not followed by their counterpart within the
+       range are treated as lone surrogates. Returns the new position.
+     */
+    static public int encode(char[] in, int start, int end, char[] out, int position, boolean form) {
+        boolean[] plain = form ? FORM_PLAIN : URI_PLAIN;
+        for (int i=start; i<end; i++) {
+            char c = in[i];
+            if (c < 128) {
+                if (plain[c]) {
+                    out[position++] = c;
+                } else if (c == ' ' && form) {
+                    out[position++] = '+';
+                } else {
+                    position = triplet(c, out, position);
+                }
+            } else if (c < 0x800) {
+                position = triplet(0xC0 | (c >> 6), out, position);
+                position = triplet(0x80 | (c & 0x3F), out, position);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(in[i + 1])) {
+                    int cp = Character.toCodePoint(c, in[++i]);
+                    position = triplet(0xF0 | (cp >> 18), out, position);
+                    position = triplet(0x80 | ((cp >> 12) & 0x3F), out, position);
+                    position = triplet(0x80 | ((cp >> 6) & 0x3F), out, position);
+                    position = triplet(0x80 | (cp & 0x3F), out, position);
+                } else if (form) {
+                    position = triplet('?', out, position);
+                } else {
+                    out[position++] = '%';
+                    out[position++] = '{';
+                    out[position++] = DIGITS[(c >> 12) & 0xF];
+                    out[position++] = DIGITS[(c >> 8) & 0xF];
+                    out[position++] = DIGITS[(c >> 4) & 0xF];
+                    out[position++] = DIGITS[c & 0xF];
+                    out[position++] = '}';
+                }
+            } else {
+                position = triplet(0xE0 | (c >> 12), out, position);
+                position = triplet(0x80 | ((c >> 6) & 0x3F), out, position);
+                position = triplet(0x80 | (c & 0x3F), out, position);
+            }
+        }
+        return position;
+    }
+
+    static protected int triplet(int b, char[] out, int position) {
+        out[position++] = '%';
+        out[position++] = DIGITS[b >> 4];
+        out[position++] = DIGITS[b & 0xF];
+        return position;
+    }
+
+    public void put(CallContext context, char c) {
+        if (this.high != 0) {
+            this.pair[0] = this.high;
+            this.high    = 0;
+            if (Character.isLowSurrogate(c)) {
+                this.pair[1] = c;
+                this.encodeAndWrite(context, this.pair, 0, 2);
+                return;
+            }
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+        if (Character.isHighSurrogate(c)) {
+            this.high = c;
+        } else if (c < 128 && this.plain[c]) {
+            this.output.append(context, c);
+        } else {
+            this.pair[0] = c;
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+    }
+
+    public void put(CallContext context, char[] buffer, int offset, int length) {
+        if (length == 0) { return; }
+        int end = offset + length;
+        while (this.high != 0 && offset < end) {
+            this.put(context, buffer[offset++]);
+        }
+        while (offset < end) {
+            int start = offset;
+            char c;
+            while (offset < end && (c = buffer[offset]) < 128 && this.plain[c]) { offset++; }
+            if (offset > start) {
+                this.output.append(context, buffer, start, offset - start);
+            }
+            start = offset;
+            while (offset < end && ((c = buffer[offset]) >= 128 || this.plain[c] == false)) { offset++; }
+            if (offset > start) {
+                int stop = offset;
+                if (stop == end && Character.isHighSurrogate(buffer[stop - 1])) {
+                    this.high = buffer[--stop];
+                }
+                this.encodeAndWrite(context, buffer, start, stop - start);
+            }
+        }
+    }
+
+    protected void encodeAndWrite(CallContext context, char[] buffer, int offset, int length) {
+        int chunk = 256;
+        int needed = ((length < chunk ? length : chunk) + 1) * MAXIMUM_EXPANSION;
+        if (this.escaped == null || this.escaped.length < needed) { this.escaped = new char[needed]; }
+        int end = offset + length;
+        while (offset < end) {
+            int n = end - offset < chunk ? end - offset : chunk;
+            if (offset + n < end && Character.isHighSurrogate(buffer[offset + n - 1])) { n++; }
+            int position = encode(buffer, offset, offset + n, this.escaped, 0, this.form);
+            this.output.append(context, this.escaped, 0, position);
+            offset += n;
+        }
+    }
+
+    public void finish(CallContext context) {
+        if (this.high != 0) {
+            this.pair[0] = this.high;
+            this.high    = 0;
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+    }
+
+    /**
+       Encodes the string, returns it unchanged if nothing needs to be
+       escaped.
+     */
+    static public String encode(CallContext context, String string, boolean form) {
+        int len   = string.length();
+        int first = scan(string, 0, len, form);
+        if (first == len) { return string; }
+        return encode(context, string, 0, len, new StringBuilder(len + 16), form).toString();
+    }
+
+    static public StringBuilder encode(CallContext context, CharSequence string, int start, int end, StringBuilder output, boolean form) {
+        int first = scan(string, start, end, form);
+        output.append(string, start, first);
+        if (first == end) { return output; }
+
+        PercentEncoder encoder = new PercentEncoder(context, Encoding.prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null), form);
+        encoder.append(string, first, end);
+        encoder.finish(context);
+        return output;
+    }
+
+    /**
+       Encodes the string into US-ASCII bytes.
+     */
+    static public byte[] encodeToBytes(CallContext context, CharSequence string, boolean form) {
+        int len   = string.length();
+        int first = scan(string, 0, len, form);
+        char[] in  = new char[len - first];
+        CharSourceCharSequence.getChars(string, first, len, in, 0);
+        char[] out = new char[in.length * MAXIMUM_EXPANSION];
+        int position = encode(in, 0, in.length, out, 0, form);
+
+        byte[] bytes = new byte[first + position];
+        for (int i=0; i<first; i++) {
+            bytes[i] = (byte) string.charAt(i);
+        }
+        for (int i=0; i<position; i++) {
+            bytes[first + i] = (byte) out[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,91 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
+
+import java.io.IOException;
+
+/**
+   A single recoding step from one encoding into another, with all
+   options already bound.
+
+   Recoders are immutable and may be shared between threads; state
+   that is specific to an output (like beginning of line) is kept in
+   the RecodingTargetContext passed in.
+ */
+public interface Recoder {
+
+    public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context);
+
+    /**
+       Returns a recoder with the given options bound. Recoders that do
+       not take options return themselves.
+     */
+    default public Recoder bind(CallContext context, Object... options) {
+        return this;
+    }
+
+    /**
+       StringBuilder variant; the default implementation recodes the
+       sequence as a String and appends the result. Returns the output,
+       which is created if null.
+     */
+    default public StringBuilder recode(CallContext context, CharSequence string, StringBuilder output, RecodingTargetContext recoding_target_context) {
+        if (string == null) { return output; }
+
+        String result = this.recode(context, string.toString(), recoding_target_context);
+        output = Encoding.prepareOutput(context, output, result == null ? 0 : result.length());
+        if (result != null) { output.append(result); }
+        return output;
+    }
+
+    /**
+       Streaming variant; the default implementation reads the source
+       completely and recodes it as a String. Recoders which are able to
+       process their input char by char override this.
+     */
+    default public StringBuilder recode(CallContext context, CharSource string, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        if (string == null) { return null; }
+
+        int length = string.length(context);
+        StringBuilder input = new StringBuilder(length >= 0 ? length : 1024);
+        try {
+            string.appendTo(context, input);
+        } catch (IOException ioe) {
+            CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not recode char sequence, reading from source failed");
+            throw (ExceptionEnvironmentFailure) null; // compiler insists
+        }
+
+        String result = this.recode(context, input.toString(), recoding_target_context);
+        if (result == null) { return null; }
+
+        Encoding.Output output = Encoding.prepareOutput(context, appendable, new CharSourceCharSequence(context, result), recoding_target_context);
+        output.append(context, result);
+        return output.to_return;
+    }
+
+    /**
+       Returns a transducer which recodes everything appended to it into
+       the given appendable. The default implementation buffers the input
+       until finish, recoders which are able to process their input char
+       by char override this.
+     */
+    default public RecodingTransducer getTransducer(CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        return new BufferingTransducer(context, this, appendable, recoding_target_context);
+    }
+}
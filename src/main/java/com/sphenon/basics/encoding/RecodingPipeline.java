@@ -0,0 +1,156 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
+import com.sphenon.basics.customary.*;
+
+import java.io.Reader;
+import java.io.IOException;
+
+/**
+   A sequence of EncodingSteps, compiled once into bound Recoders.
+
+   Each pair of adjacent steps is resolved to its Recoder when the
+   pipeline is built, with the options of the target step converted to
+   their expected types. Afterwards the pipeline is immutable and can be
+   used concurrently from any number of threads.
+ */
+public class RecodingPipeline {
+
+    protected Recoder[] recoders;
+
+    public RecodingPipeline (CallContext context, String encodings) {
+        this(context, EncodingStep.buildFromString(context, encodings));
+    }
+
+    public RecodingPipeline (CallContext context, EncodingStep... steps) {
+        if (steps == null) {
+            this.recoders = null;
+            return;
+        }
+
+        int count = 0;
+        EncodingStep previous = null;
+        for (EncodingStep step : steps) {
+            if (previous != null && step != null) { count++; }
+            previous = step;
+        }
+
+        this.recoders = new Recoder[count];
+        int r = 0;
+        previous = null;
+        for (EncodingStep step : steps) {
+            if (previous != null && step != null) {
+                this.recoders[r++] = Encoding.getRecoder(context, previous.getEncoding(context), step.getEncoding(context), step.getOptions(context));
+            }
+            previous = step;
+        }
+    }
+
+    public int getLength (CallContext context) {
+        return this.recoders == null ? 0 : this.recoders.length;
+    }
+
+    public String recode(CallContext context, Object object) {
+        return this.recode(context, com.sphenon.basics.message.t.s(context, object), (RecodingTargetContext) null);
+    }
+
+    public String recode(CallContext context, String string, RecodingTargetContext recoding_target_context) {
+        if (this.recoders == null) {
+            return recoding_target_context == null ? string : recoding_target_context.processOutput(context, string);
+        }
+        int last = this.recoders.length-1;
+        for (int r=0; r<=last; r++) {
+            if (string == null) { return null; }
+            RecodingTargetContext stage_context = this.getStageContext(context, r, recoding_target_context);
+            string = this.recoders[r].recode(context, string, stage_context);
+            if (stage_context != null) {
+                string = stage_context.processOutput(context, string);
+            }
+        }
+        return string;
+    }
+
+    /**
+       Only the last stage writes to the target; the stages before it get
+       a context of their own, starting from the state of the target,
+       otherwise their output would change the target state.
+     */
+    protected RecodingTargetContext getStageContext(CallContext context, int stage, RecodingTargetContext recoding_target_context) {
+        if (recoding_target_context == null || stage == this.recoders.length-1) {
+            return recoding_target_context;
+        }
+        RecodingTargetContext stage_context = new RecodingTargetContext(context);
+        stage_context.setBeginningOfLine(context, recoding_target_context.getBeginningOfLine(context));
+        return stage_context;
+    }
+
+    /**
+       Streaming execution; the stages are chained as transducers, so the
+       input flows through all of them into the appendable in one pass.
+       Only stages which need their complete input buffer it.
+       Returns StringBuilder only if one was created newly.
+     */
+    public StringBuilder recode(CallContext context, CharSource string, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        if (this.recoders == null || this.recoders.length == 0) {
+            return Encoding.recode(context, string, appendable, (Encoding) null, (Encoding) null, recoding_target_context);
+        }
+        if (string == null) { return null; }
+
+        Encoding.Output output = Encoding.prepareOutput(context, appendable, string, (RecodingTargetContext) null);
+        RecodingTransducer[] transducers = this.getTransducers(context, output.appendable, recoding_target_context);
+
+        try {
+            string.appendTo(context, transducers[0]);
+        } catch (IOException ioe) {
+            CustomaryContext.create((Context)context).throwEnvironmentFailure(context, ioe, "Could not recode char sequence, reading from source failed");
+            throw (ExceptionEnvironmentFailure) null; // compiler insists
+        }
+        for (RecodingTransducer transducer : transducers) {
+            transducer.finish(context);
+        }
+
+        return output.to_return;
+    }
+
+    /**
+       Returns the chained transducers of the stages, input is appended
+       to the first one and all of them have to be finished in order.
+       Since finishing resets them, the chain can be used again for
+       further input, e.g. by a writer.
+     */
+    public RecodingTransducer[] getTransducers(CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        if (this.recoders == null || this.recoders.length == 0) {
+            return new RecodingTransducer[] { Encoding.IDENTITY.getTransducer(context, appendable, recoding_target_context) };
+        }
+        RecodingTransducer[] transducers = new RecodingTransducer[this.recoders.length];
+        Appendable target = appendable;
+        for (int r=this.recoders.length-1; r>=0; r--) {
+            transducers[r] = this.recoders[r].getTransducer(context, target, this.getStageContext(context, r, recoding_target_context));
+            target = transducers[r];
+        }
+        return transducers;
+    }
+
+    public StringBuilder recode(CallContext context, CharSequence sequence, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        return this.recode(context, sequence == null ? null : new CharSourceCharSequence(context, sequence), appendable, recoding_target_context);
+    }
+
+    public StringBuilder recode(CallContext context, Reader reader, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        return this.recode(context, reader == null ? null : new CharSourceReader(context, reader), appendable, recoding_target_context);
+    }
+}
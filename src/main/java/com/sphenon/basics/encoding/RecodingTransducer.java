@@ -0,0 +1,85 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.nio.CharBuffer;
+
+/**
+   Push variant of a Recoder: everything appended is recoded and passed on
+   to the output, so that several transducers can be chained and data
+   flows through all of them in one pass.
+
+   Since state may be pending at the end of input, finish has to be
+   called after the last char was appended. Afterwards the transducer is
+   in its initial state again and can be reused for further input.
+ */
+abstract public class RecodingTransducer implements Appendable {
+
+    protected CallContext     context;
+    protected Encoding.Output output;
+
+    public RecodingTransducer (CallContext context, Encoding.Output output) {
+        this.context = context;
+        this.output  = output;
+    }
+
+    public RecodingTransducer (CallContext context, Appendable appendable, RecodingTargetContext recoding_target_context) {
+        this(context, Encoding.prepareOutput(context, appendable, (CharSource) null, recoding_target_context));
+    }
+
+    abstract public void put(CallContext context, char c);
+
+    public void put(CallContext context, char[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i=offset; i<end; i++) {
+            this.put(context, buffer[i]);
+        }
+    }
+
+    public void finish(CallContext context) {
+    }
+
+    public Appendable append(char c) {
+        this.put(this.context, c);
+        return this;
+    }
+
+    public Appendable append(CharSequence csq) {
+        if (csq == null) { csq = "null"; }
+        return this.append(csq, 0, csq.length());
+    }
+
+    protected char[] block;
+
+    public Appendable append(CharSequence csq, int start, int end) {
+        if (csq == null) { csq = "null"; }
+        if (csq instanceof CharBuffer && ((CharBuffer) csq).hasArray()) {
+            CharBuffer cb = (CharBuffer) csq;
+            this.put(this.context, cb.array(), cb.arrayOffset() + cb.position() + start, end - start);
+            return this;
+        }
+        int needed = end - start < 4096 ? end - start : 4096;
+        if (this.block == null || this.block.length < needed) { this.block = new char[needed]; }
+        while (start < end) {
+            int n = end - start < this.block.length ? end - start : this.block.length;
+            CharSourceCharSequence.getChars(csq, start, start + n, this.block, 0);
+            this.put(this.context, this.block, 0, n);
+            start += n;
+        }
+        return this;
+    }
+}
@@ -0,0 +1,228 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.Matcher;
+
+/**
+   A regular expression and its replacement, prepared once for repeated
+   use; the result of replaceAll is the same as the one of
+   String.replaceAll(regexp, replacement).
+
+   Regular expressions without meta characters (apart from escaped
+   punctuation like "\\.") are not compiled at all but replaced
+   literally, others are compiled and kept in a bounded cache. The
+   replacement is parsed into text and group references in advance;
+   replacements which can't be parsed here (named groups, invalid
+   references) are passed to Matcher.replaceAll, which reports errors
+   as before.
+ */
+public class RegexpReplacement {
+
+    static protected volatile BoundedCache<String,Pattern>           pattern_cache;
+    static protected volatile BoundedCache<String,RegexpReplacement> replacement_cache;
+
+    static public BoundedCache<String,Pattern> getPatternCache(CallContext context) {
+        if (pattern_cache == null) {
+            synchronized (RegexpReplacement.class) {
+                if (pattern_cache == null) {
+                    pattern_cache = new BoundedCache<String,Pattern>(context, 1024);
+                }
+            }
+        }
+        return pattern_cache;
+    }
+
+    static public BoundedCache<String,RegexpReplacement> getReplacementCache(CallContext context) {
+        if (replacement_cache == null) {
+            synchronized (RegexpReplacement.class) {
+                if (replacement_cache == null) {
+                    replacement_cache = new BoundedCache<String,RegexpReplacement>(context, 1024);
+                }
+            }
+        }
+        return replacement_cache;
+    }
+
+    /**
+       Returns the compiled pattern, throws PatternSyntaxException like
+       Pattern.compile.
+     */
+    static public Pattern getPattern(CallContext context, String regexp) {
+        return getPatternCache(context).get(context, regexp, (ctx, key) -> Pattern.compile(key));
+    }
+
+    static public RegexpReplacement get(CallContext context, String regexp, String replacement) {
+        String key = regexp.length() + ":" + regexp + replacement;
+        return getReplacementCache(context).get(context, key, (ctx, k) -> new RegexpReplacement(ctx, regexp, replacement));
+    }
+
+    protected final String   regexp;
+    protected final String   replacement;
+    protected final String   literal;
+    protected final String   literal_replacement;
+    protected final Pattern  pattern;
+    protected final Object[] template;
+
+    public RegexpReplacement (CallContext context, String regexp, String replacement) {
+        this.regexp      = regexp;
+        this.replacement = replacement;
+
+        String literal = getLiteral(regexp);
+        Object[] literal_template = literal == null ? null : parseReplacement(replacement, 0);
+        if (literal_template != null && literal_template.length <= 1 && (literal_template.length == 0 || literal_template[0] instanceof String)) {
+            this.literal             = literal;
+            this.literal_replacement = literal_template.length == 0 ? "" : (String) literal_template[0];
+            this.pattern             = null;
+            this.template            = null;
+        } else {
+            this.literal             = null;
+            this.literal_replacement = null;
+            this.pattern             = getPattern(context, regexp);
+            this.template            = parseReplacement(replacement, this.pattern.matcher("").groupCount());
+        }
+    }
+
+    public String getRegexp(CallContext context) {
+        return this.regexp;
+    }
+
+    public String getReplacement(CallContext context) {
+        return this.replacement;
+    }
+
+    /**
+       Returns the text matched by the regular expression if it contains
+       no meta characters, null otherwise.
+     */
+    static protected String getLiteral(String regexp) {
+        int len = regexp.length();
+        if (len == 0) { return null; }
+        StringBuilder literal = null;
+        for (int i=0; i<len; i++) {
+            char c = regexp.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == len) { return null; }
+                char e = regexp.charAt(i + 1);
+                if (e >= 128 || Character.isLetterOrDigit(e)) { return null; }
+                if (literal == null) { literal = new StringBuilder(len).append(regexp, 0, i); }
+                literal.append(e);
+                i++;
+                continue;
+            }
+            if ("^$.|?*+()[]{}".indexOf(c) != -1 || Character.isSurrogate(c)) { return null; }
+            if (literal != null) { literal.append(c); }
+        }
+        return literal == null ? regexp : literal.toString();
+    }
+
+    /**
+       Parses the replacement like Matcher.appendReplacement does, into
+       Strings and Integer group references. Returns null if it contains
+       anything not handled here.
+     */
+    static protected Object[] parseReplacement(String replacement, int group_count) {
+        ArrayList<Object> parts = new ArrayList<Object>();
+        StringBuilder     text  = new StringBuilder();
+        int len = replacement.length();
+        int i   = 0;
+        while (i < len) {
+            char c = replacement.charAt(i);
+            if (c == '\\') {
+                if (++i == len) { return null; }
+                text.append(replacement.charAt(i++));
+            } else if (c == '$') {
+                if (++i == len) { return null; }
+                int group = replacement.charAt(i) - '0';
+                if (group < 0 || group > 9) { return null; }
+                i++;
+                while (i < len) {
+                    int digit = replacement.charAt(i) - '0';
+                    if (digit < 0 || digit > 9) { break; }
+                    int next = group * 10 + digit;
+                    if (next > group_count) { break; }
+                    group = next;
+                    i++;
+                }
+                if (group > group_count) { return null; }
+                if (text.length() > 0) {
+                    parts.add(text.toString());
+                    text.setLength(0);
+                }
+                parts.add(Integer.valueOf(group));
+            } else {
+                text.append(c);
+                i++;
+            }
+        }
+        if (text.length() > 0) {
+            parts.add(text.toString());
+        }
+        return parts.toArray();
+    }
+
+    public String replaceAll(CallContext context, String string) {
+        if (this.literal != null) {
+            return replaceLiteral(string, this.literal, this.literal_replacement);
+        }
+
+        Matcher matcher = this.pattern.matcher(string);
+        if (matcher.find() == false) { return string; }
+        if (this.template == null) {
+            matcher.reset();
+            return matcher.replaceAll(this.replacement);
+        }
+
+        StringBuilder result = new StringBuilder(string.length() + 16);
+        int last = 0;
+        do {
+            result.append(string, last, matcher.start());
+            for (Object part : this.template) {
+                if (part instanceof String) {
+                    result.append((String) part);
+                } else {
+                    String group = matcher.group((Integer) part);
+                    if (group != null) { result.append(group); }
+                }
+            }
+            last = matcher.end();
+        } while (matcher.find());
+        result.append(string, last, string.length());
+        return result.toString();
+    }
+
+    static public String replaceLiteral(String string, String literal, String replacement) {
+        if (literal.length() == 1 && replacement.length() == 1) {
+            return string.replace(literal.charAt(0), replacement.charAt(0));
+        }
+        int index = string.indexOf(literal);
+        if (index == -1) { return string; }
+
+        int length = literal.length();
+        StringBuilder result = new StringBuilder(string.length() + 16);
+        int last = 0;
+        do {
+            result.append(string, last, index).append(replacement);
+            last  = index + length;
+            index = string.indexOf(literal, last);
+        } while (index != -1);
+        result.append(string, last, string.length());
+        return result.toString();
+    }
+}
@@ -0,0 +1,211 @@
+package com.sphenon.basics.encoding;
+
+/****************************************************************************
+  Copyright 2001-2024 Sphenon GmbH
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+  use this file except in compliance with the License. You may obtain a copy
+  of the License at http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+  License for the specific language governing permissions and limitations
+  under the License.
+*****************************************************************************/
+
+import com.sphenon.basics.context.*;
+
+/**
+   Encoder for the "safe ASCII" encodings VSA, VSAU and FILENAME.
+
+   Chars are processed as their UTF-8 bytes, which are computed inline.
+   In VSA, all bytes but alphanumerics are escaped as _XX, as is a
+   leading digit; VSAU additionally keeps '_'. In FILENAME, every byte
+   which is not allowed in file names is replaced by a single '_'.
+   Lone surrogates are treated as '?', like String.getBytes does.
+ */
+public class VSAEncoder extends RecodingTransducer {
+
+    static public final int VSA      = 0;
+    static public final int VSAU     = 1;
+    static public final int FILENAME = 2;
+
+    static protected final char[]      DIGITS = "0123456789ABCDEF".toCharArray();
+    static protected final boolean[][] PLAIN  = new boolean[3][128];
+
+    static {
+        for (int c=0; c<128; c++) {
+            PLAIN[VSA][c]      = Encoding.URICharCode[c] == 0;
+            PLAIN[VSAU][c]     = Encoding.URICharCode[c] == 0 || c == '_';
+            PLAIN[FILENAME][c] = Encoding.FileNameCode[c] == 1;
+        }
+    }
+
+    /**
+       Maximum number of output chars per input char.
+     */
+    static public final int MAXIMUM_EXPANSION = 9;
+
+    protected int       mode;
+    protected boolean[] plain;
+    protected boolean   first;
+    protected char      high;
+    protected char[]    pair;
+    protected char[]    escaped;
+
+    public VSAEncoder (CallContext context, Encoding.Output output, int mode) {
+        super(context, output);
+        this.mode  = mode;
+        this.plain = PLAIN[mode];
+        this.first = (mode != FILENAME);
+        this.pair  = new char[2];
+    }
+
+    /**
+       Returns the index of the first char which needs to be escaped,
+       or end if there is none.
+     */
+    static public int scan(CharSequence string, int start, int end, int mode) {
+        boolean[] plain = PLAIN[mode];
+        char c;
+        if (mode != FILENAME && start < end && (c = string.charAt(start)) >= '0' && c <= '9') { return start; }
+        while (start < end && (c = string.charAt(start)) < 128 && plain[c]) { start++; }
+        return start;
+    }
+
+    /**
+       Encodes the chars from start to end of in into out at position,
+       which has to provide room for MAXIMUM_EXPANSION chars per input
+       char. Returns the new position.
+     */
+    protected int encode(char[] in, int start, int end, char[] out, int position) {
+        for (int i=start; i<end; i++) {
+            char c = in[i];
+            if (this.first) {
+                this.first = false;
+                if (c >= '0' && c <= '9') {
+                    position = this.escape(c, out, position);
+                    continue;
+                }
+            }
+            if (c < 128) {
+                if (this.plain[c]) {
+                    out[position++] = c;
+                } else {
+                    position = this.escape(c, out, position);
+                }
+            } else if (c < 0x800) {
+                position = this.escape(0xC0 | (c >> 6), out, position);
+                position = this.escape(0x80 | (c & 0x3F), out, position);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(in[i + 1])) {
+                    int cp = Character.toCodePoint(c, in[++i]);
+                    position = this.escape(0xF0 | (cp >> 18), out, position);
+                    position = this.escape(0x80 | ((cp >> 12) & 0x3F), out, position);
+                    position = this.escape(0x80 | ((cp >> 6) & 0x3F), out, position);
+                    position = this.escape(0x80 | (cp & 0x3F), out, position);
+                } else {
+                    position = this.escape('?', out, position);
+                }
+            } else {
+                position = this.escape(0xE0 | (c >> 12), out, position);
+                position = this.escape(0x80 | ((c >> 6) & 0x3F), out, position);
+                position = this.escape(0x80 | (c & 0x3F), out, position);
+            }
+        }
+        return position;
+    }
+
+    protected int escape(int b, char[] out, int position) {
+        out[position++] = '_';
+        if (this.mode != FILENAME) {
+            out[position++] = DIGITS[b >> 4];
+            out[position++] = DIGITS[b & 0xF];
+        }
+        return position;
+    }
+
+    public void put(CallContext context, char c) {
+        if (this.high != 0) {
+            this.pair[0] = this.high;
+            this.high    = 0;
+            if (Character.isLowSurrogate(c)) {
+                this.pair[1] = c;
+                this.encodeAndWrite(context, this.pair, 0, 2);
+                return;
+            }
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+        if (Character.isHighSurrogate(c)) {
+            this.high = c;
+        } else {
+            this.pair[0] = c;
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+    }
+
+    public void put(CallContext context, char[] buffer, int offset, int length) {
+        int end = offset + length;
+        while (offset < end && (this.high != 0 || this.first)) {
+            this.put(context, buffer[offset++]);
+        }
+        while (offset < end) {
+            int start = offset;
+            char c;
+            while (offset < end && (c = buffer[offset]) < 128 && this.plain[c]) { offset++; }
+            if (offset > start) {
+                this.output.append(context, buffer, start, offset - start);
+            }
+            start = offset;
+            while (offset < end && ((c = buffer[offset]) >= 128 || this.plain[c] == false)) { offset++; }
+            if (offset > start) {
+                int stop = offset;
+                if (stop == end && Character.isHighSurrogate(buffer[stop - 1])) {
+                    this.high = buffer[--stop];
+                }
+                this.encodeAndWrite(context, buffer, start, stop - start);
+            }
+        }
+    }
+
+    protected void encodeAndWrite(CallContext context, char[] buffer, int offset, int length) {
+        int chunk  = 256;
+        int needed = ((length < chunk ? length : chunk) + 1) * MAXIMUM_EXPANSION;
+        if (this.escaped == null || this.escaped.length < needed) { this.escaped = new char[needed]; }
+        int end = offset + length;
+        while (offset < end) {
+            int n = end - offset < chunk ? end - offset : chunk;
+            if (offset + n < end && Character.isHighSurrogate(buffer[offset + n - 1])) { n++; }
+            int position = this.encode(buffer, offset, offset + n, this.escaped, 0);
+            this.output.append(context, this.escaped, 0, position);
+            offset += n;
+        }
+    }
+
+    public void finish(CallContext context) {
+        if (this.high != 0) {
+            this.pair[0] = this.high;
+            this.high    = 0;
+            this.encodeAndWrite(context, this.pair, 0, 1);
+        }
+        this.first = (this.mode != FILENAME);
+    }
+
+    /**
+       Encodes the string, returns it unchanged if nothing needs to be
+       escaped.
+     */
+    static public String encode(CallContext context, String string, int mode) {
+        int len = string.length();
+        if (scan(string, 0, len, mode) == len) { return string; }
+        return encode(context, string, 0, len, new StringBuilder(len + 16), mode).toString();
+    }
+
+    static public StringBuilder encode(CallContext context, CharSequence string, int start, int end, StringBuilder output, int mode) {
+        VSAEncoder encoder = new VSAEncoder(context, Encoding.prepareOutput(context, output, (CharSource) null, (RecodingTargetContext) null), mode);
+        encoder.append(string, start, end);
+        encoder.finish(context);
+        return output;
+    }
+}
@@ -15,6 +15,7 @@ package com.sphenon.basics.encoding.test;
 *****************************************************************************/
 
 import com.sphenon.basics.context.*;
+import com.sphenon.basics.exception.*;
 import com.sphenon.basics.monitoring.*;
 import com.sphenon.basics.notification.*;
 import com.sphenon.basics.customary.*;
@@ -23,6 +24,9 @@ import com.sphenon.basics.testing.*;
 import com.sphenon.basics.encoding.*;
 
 import java.io.StringWriter;
+import java.io.StringReader;
+import java.io.Reader;
+import java.io.IOException;
 
 public class Test_Basics extends com.sphenon.basics.testing.classes.TestBase {
 
@@ -208,6 +212,14 @@ public class Test_Basics extends com.sphenon.basics.testing.classes.TestBase {
             result = Encoding.recodeByString(context, string, recoding);
             CustomaryContext.create((Context)context).sendTrace(context, Notifier.CHECKPOINT, "Recoding '%(string)' =='%(recoding)'==> '%(result)'", "string", string, "result", result, "recoding", recoding);
 
+            {
+                string = "%78, %79, %7A, %7B, %7C, %7D, %7E, %7F";
+                recoding = "URI/UTF8//UTF8/ABBREV(8)";
+                RecodingPipeline pipeline = new RecodingPipeline(context, recoding);
+                result = pipeline.recode(context, string);
+                CustomaryContext.create((Context)context).sendTrace(context, Notifier.CHECKPOINT, "Pipeline '%(string)' =='%(recoding)'==> '%(result)'", "string", string, "result", result, "recoding", recoding);
+            }
+
             {
                 EncodingStep[] encoding_steps = {
                     new EncodingStep(context, Encoding.UTF8),
@@ -271,6 +283,68 @@ public class Test_Basics extends com.sphenon.basics.testing.classes.TestBase {
                 CustomaryContext.create((Context)context).sendTrace(context, Notifier.CHECKPOINT, "Encoding writer, no encoding, 1000 x 10000 passes: %(duration) ms", "duration", stop-start);
             }
 
+            try {
+                result = Encoding.recode(context, "x", Encoding.JAVA, Encoding.JSON);
+                CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Recoding from JAVA to JSON is not registered, but produced '%(result)'", "result", result);
+                throw (ExceptionAssertionProvedFalse) null; // compiler insists
+            } catch (ExceptionLimitation el) {
+            }
+
+            {
+                EncodingStep[] encoding_steps = EncodingStep.buildFromString(context, "UTF8/XML//UTF8/INDENT(\"  \",1)");
+                for (String input : new String[] { "<a href=\"x?y=1&z=2\">\u00C4rger \"\u20AC\"</a>\nund so\nweiter\n", "a\nb", "a<b" }) {
+                    String expected = Encoding.recode(context, input, encoding_steps, new RecodingTargetContext(context));
+                    checkEquals(context, "INDENT after XML", "  " + Encoding.recode(context, input, Encoding.UTF8, Encoding.XML).replace("\n", "\n  ").replaceFirst("  $", ""), expected);
+                    for (int chunk=1; chunk<=7; chunk++) {
+                        StringBuilder streamed = new StringBuilder();
+                        Encoding.recode(context, (Reader) new ChunkedReader(input, chunk), (Appendable) streamed, encoding_steps, new RecodingTargetContext(context));
+                        checkEquals(context, "Reader in chunks of " + chunk, expected, streamed.toString());
+
+                        // the writer tracks the beginning of lines, so INDENT indents the first line, too
+                        StringWriter string_writer = new StringWriter();
+                        EncodingWriter encoding_writer = new EncodingWriter(context, string_writer);
+                        encoding_writer.setEncodingSteps(context, encoding_steps);
+                        for (int i=0; i<input.length(); i+=chunk) {
+                            encoding_writer.write(input.substring(i, Math.min(i + chunk, input.length())));
+                        }
+                        encoding_writer.flush();
+                        checkEquals(context, "EncodingWriter in chunks of " + chunk, expected, string_writer.toString());
+                    }
+                }
+            }
+
+            checkEquals(context, "URI UTF-8", "\u00E4\u00F6\u00FC \u20AC", Encoding.recode(context, "%C3%A4%C3%B6%C3%BC%20%E2%82%AC", Encoding.URI, Encoding.UTF8));
+            checkEquals(context, "URI ISO-8859-1 fallback", "\u00E4x", Encoding.recode(context, "%E4x", Encoding.URI, Encoding.UTF8));
+            checkEquals(context, "URI %{hex}", "a\u20ACb", Encoding.recode(context, "a%{20AC}b", Encoding.URI, Encoding.UTF8));
+
+            checkEquals(context, "JAVASQLID keyword", "s_Select", Encoding.recode(context, "Select", Encoding.UTF8, Encoding.JAVASQLID));
+            checkEquals(context, "JAVASQLID prefix", "s_s_gr\u00F6\u00DFe", Encoding.recode(context, "s_gr\u00F6\u00DFe", Encoding.UTF8, Encoding.JAVASQLID));
+            checkEquals(context, "JAVASQLID upper case prefix", "s_S_\u00DCber", Encoding.recode(context, "S_\u00DCber", Encoding.UTF8, Encoding.JAVASQLID));
+            checkEquals(context, "JAVASQLID plain", "gr\u00F6\u00DFe", Encoding.recode(context, "gr\u00F6\u00DFe", Encoding.UTF8, Encoding.JAVASQLID));
+
+            checkEquals(context, "FIXED(10,0,R)", "0000000042", Encoding.recodeByString(context, "42", "UTF8/FIXED(10,0,R)"));
+            checkEquals(context, "FIXED(6,.,L)", "ab....", Encoding.recodeByString(context, "ab", "UTF8/FIXED(6,.,L)"));
+
+            checkEquals(context, "INTEGER %05d", String.format("%05d", 42), Encoding.recode(context, "42", Encoding.INTEGER, Encoding.FORMAT, "%05d"));
+            checkEquals(context, "INTEGER %x", String.format("[%-6x]", 255), Encoding.recode(context, "255", Encoding.INTEGER, Encoding.FORMAT, "[%-6x]"));
+            checkEquals(context, "FLOAT %.2f", String.format("%.2f", 3.14159), Encoding.recode(context, "3.14159", Encoding.FLOAT, Encoding.FORMAT, "%.2f"));
+            checkEquals(context, "FLOAT %+10.3f", String.format("%+10.3f", -2.5), Encoding.recode(context, "-2.5", Encoding.FLOAT, Encoding.FORMAT, "%+10.3f"));
+            checkEquals(context, "UTF8 %-8s", String.format("%-8s|%%", "abc"), Encoding.recode(context, "abc", Encoding.UTF8, Encoding.FORMAT, "%-8s|%%"));
+
+            string = "Hall\u00F6chen, \u20AC 5!";
+            result = Encoding.recode(context, string, Encoding.UTF8, Encoding.BASE64);
+            checkEquals(context, "BASE64 round trip", string, Encoding.recode(context, result, Encoding.BASE64, Encoding.UTF8));
+            checkEquals(context, "BASE64 padded", "A", Encoding.recode(context, "QQ==", Encoding.BASE64, Encoding.UTF8));
+            checkEquals(context, "BASE64 unpadded", "A", Encoding.recode(context, "QQ", Encoding.BASE64, Encoding.UTF8));
+            for (String invalid : new String[] { "=", "Q=", "QQ=", "QQ==QQ==", "QQ=Q", "QUJD=" }) {
+                try {
+                    result = Encoding.recode(context, invalid, Encoding.BASE64, Encoding.UTF8);
+                    CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Invalid BASE64 '%(string)' decoded to '%(result)'", "string", invalid, "result", result);
+                    throw (ExceptionAssertionProvedFalse) null; // compiler insists
+                } catch (ExceptionPreConditionViolation epcv) {
+                }
+            }
+
             string = "Hallo, das ist ja Mist";
             result = Encoding.recode(context, string, Encoding.UTF8, Encoding.REGEXP, "Mist", "super toll!");
             CustomaryContext.create((Context)context).sendTrace(context, Notifier.CHECKPOINT, "Recoding '%(string)' => '%(result)'", "string", string, "result", result);
@@ -281,5 +355,31 @@ public class Test_Basics extends com.sphenon.basics.testing.classes.TestBase {
         
         return TestResult.OK;
     }
+
+    // hands out its text in chunks of the given size, to check streaming
+    static protected class ChunkedReader extends Reader {
+        protected StringReader reader;
+        protected int          chunk;
+
+        public ChunkedReader(String string, int chunk) {
+            this.reader = new StringReader(string);
+            this.chunk  = chunk;
+        }
+
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return this.reader.read(buffer, offset, Math.min(length, this.chunk));
+        }
+
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+
+    protected void checkEquals(CallContext context, String check, String expected, String actual) {
+        if (expected == null ? actual != null : expected.equals(actual) == false) {
+            CustomaryContext.create((Context)context).throwAssertionProvedFalse(context, "Check '%(check)' failed, expected '%(expected)', got '%(actual)'", "check", check, "expected", expected, "actual", actual);
+            throw (ExceptionAssertionProvedFalse) null; // compiler insists
+        }
+    }
 }
 